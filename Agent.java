@@ -1,8 +1,22 @@
+import java.util.Collections;
+import java.util.Map;
+
 /**
  * The abstract class for an Agent that plays Connect 4.
  * 
  * All Agents must have three things: a constructor that initializes the agent with a game
  * and whether the agent is the red player, a name, and the ability to move.
+ * 
+ * An agent can also be given a time budget per move. Agents that search may use it to decide
+ * how long to think; agents that ignore it still work as before.
+ * 
+ * After every move of its opponent, an agent is told which column was played through
+ * opponentMoved(...). An agent that keeps thinking while its opponent moves can use this to
+ * stop; other agents can ignore it. When the game ends, however it ends, the agent is told
+ * through gameOver().
+ * 
+ * An agent may also count the work it does, such as nodes searched, through getCounters(), so
+ * that a game engine can report them without knowing the agent.
  */
 public abstract class Agent
 {
@@ -10,6 +24,7 @@ public abstract class Agent
     // will have access to the variable.
     protected Connect4Game myGame;
     protected boolean iAmRed;
+    private long moveBudget;    // the time allowed per move in milliseconds, or 0 for no limit
     
     /**
      * Constructs a new agent.
@@ -42,6 +57,78 @@ public abstract class Agent
      * @return the agent's name.
      */
     public abstract String getName();
+    /**
+     * Sets how long each move may take.
+     * 
+     * Your agent will not need to use this method.
+     * 
+     * @param millis the time allowed per move in milliseconds, or 0 for no limit.
+     */
+    public void setMoveBudget(long millis)
+    {
+        this.moveBudget = Math.max(0, millis);
+    }
+    /**
+     * Get how long each move may take.
+     * 
+     * Your agent may use this method.
+     * 
+     * @return the time allowed per move in milliseconds, or 0 for no limit.
+     */
+    public long getMoveBudget()
+    {
+        return moveBudget;
+    }
+    /**
+     * Computes when a move starting now must be finished. Call this at the start of move().
+     * 
+     * Your agent may use this method.
+     * 
+     * @return the System.nanoTime() value by which the move must end, or Long.MAX_VALUE if
+     * there is no time budget.
+     */
+    protected long getMoveDeadline()
+    {
+        if (moveBudget == 0)
+        {
+            return Long.MAX_VALUE;
+        }
+        return System.nanoTime() + moveBudget * 1000000L;
+    }
+    /**
+     * Tells the agent that its opponent has just made a valid move, including the move that
+     * ends the game. The game engine calls this before the agent's next move() call, if any.
+     * 
+     * You MAY override this method in your agent. By default it does nothing.
+     * 
+     * @param column the column the opponent dropped a token into.
+     */
+    public void opponentMoved(int column)
+    {
+    }
+    /**
+     * Tells the agent that its game is over: won, drawn, or stopped early, for example after an
+     * invalid move, a new game or the window being closed. The agent will not move again in this
+     * game, so it should stop any thinking it is still doing.
+     * 
+     * You MAY override this method in your agent. By default it does nothing.
+     */
+    public void gameOver()
+    {
+    }
+    /**
+     * Get counts of the work the agent has done in its game so far, by name. GameSimulator
+     * reports the average of each count over the games it was reported in, so a count that
+     * does not apply to a game, or a rate, can be left out or given per game.
+     * 
+     * You MAY override this method in your agent. By default there are no counts.
+     * 
+     * @return the counts, in the order to report them.
+     */
+    public Map<String, Long> getCounters()
+    {
+        return Collections.emptyMap();
+    }
     /**
      * The way the agent's name is displayed in the game, with its color.
      * 
@@ -0,0 +1,552 @@
+import java.util.Arrays;
+
+/**
+ * A negamax search with alpha-beta pruning over a private copy of a Connect4Game.
+ * 
+ * Moves are explored with Connect4Game.play(...) and taken back with undo(), so the search
+ * allocates nothing per node. Scores are from the point of view of the player to move: a win
+ * scores WIN_SCORE minus the number of plies needed to reach it, a loss the negative of that,
+ * and a position where the depth runs out is scored by a LineEvaluator, which follows the
+ * search move by move so that scoring a position costs nothing.
+ * 
+ * Moves are tried in the order given by a MoveOrdering: the move remembered by the
+ * transposition table, then the rest by closeness to the center, with history scores and
+ * killer moves able to lift a move a little ahead of its place. The ordering is kept from one
+ * search to the next, so repeated searches of the same position at growing depths get better
+ * ordered.
+ * 
+ * If a TranspositionTable is set, results are cached in it and reused whenever the same
+ * position is reached again, whether through another move order, in a later search or in a
+ * later game.
+ * 
+ * Your agent may use this class.
+ */
+public class AlphaBetaSearch
+{
+    public static final int WIN_SCORE = 1000000;    // the score of winning with the very next token
+    private static final int INFINITY = WIN_SCORE + 1;  // larger than any real score
+    private static final int MAX_PLY = 100000;  // more plies than any game can last
+    private static final long RED_TO_MOVE = 0x5DEECE66DL * 0x9E3779B97F4A7C15L;   // mixed into the key when red is to move
+    
+    private Connect4Game board; // the position being searched, changed and restored move by move
+    private int[] columnOrder;  // the columns ordered from the center outwards
+    private MoveOrdering ordering;  // decides which moves are tried first
+    private int[][] moveLists = new int[0][];   // per ply: the moves of the position being searched, in order; grown as deeper plies are searched
+    private long nodeLimit = Long.MAX_VALUE;    // the number of nodes after which the search stops
+    private long deadline = Long.MAX_VALUE; // the System.nanoTime() after which the search stops
+    private long nodes; // the number of nodes visited by the current search
+    private long tableProbes, tableHits;    // the transposition table lookups of the current search and how many found an entry
+    private boolean stopped;    // whether the current search ran out of nodes
+    private volatile boolean stopRequested; // set by stop() from another thread
+    private int bestScore;  // the score of the move returned by the last search
+    private TranspositionTable table;   // the cache of search results, or null
+    private boolean evaluation = true;  // whether positions where the depth runs out are scored heuristically
+    private LineEvaluator evaluator;    // follows the board to score those positions, or null
+    private long sizeKey;   // mixed into every key so boards of different sizes never share entries
+    
+    /**
+     * Creates a search of the current position of a game.
+     * 
+     * @param game the game to search; it is copied, so the game itself is never changed.
+     * @param red true if red is the player to move, false if yellow is.
+     */
+    public AlphaBetaSearch(Connect4Game game, boolean red)
+    {
+        setPosition(game, red);
+        columnOrder = new int[board.getColumnCount()];
+        int center = (board.getColumnCount() - 1) / 2;
+        for (int i = 0; i < columnOrder.length; i++)
+        {
+            // center, then alternately one step right and one step left of it
+            columnOrder[i] = i % 2 == 0 ? center - i / 2 : center + (i + 1) / 2;
+        }
+    }
+    
+    /**
+     * Replaces the position to search. The move ordering is kept but aged, so what it learned
+     * searching the old position still helps without outweighing the new one.
+     * 
+     * @param game the game to search; it is copied, so the game itself is never changed.
+     * @param red true if red is the player to move, false if yellow is.
+     */
+    public void setPosition(Connect4Game game, boolean red)
+    {
+        board = new Connect4Game(game);
+        if (board.isRedTurn() != red)
+        {
+            board.setRedPlayedFirst(!board.getRedPlayedFirst());
+        }
+        long oldSizeKey = sizeKey;
+        sizeKey = (((long) board.getColumnCount() << 40) | ((long) board.getRowCount() << 20) | board.getWinLength())
+            * 0xC2B2AE3D27D4EB4FL;
+        if (ordering == null || sizeKey != oldSizeKey)
+        {
+            moveLists = new int[0][];
+            ordering = new MoveOrdering(board.getColumnCount(), board.getRowCount());
+        }
+        else
+        {
+            ordering.age();   // what was learned about the old position counts for less
+        }
+        evaluator = newEvaluator();
+    }
+    
+    /**
+     * Sets the table used to cache search results.
+     * 
+     * @param table the table to use, or null to search without one.
+     */
+    public void setTranspositionTable(TranspositionTable table)
+    {
+        this.table = table;
+    }
+    
+    /**
+     * Sets whether positions where the depth runs out are given a heuristic score by a
+     * LineEvaluator, which they are by default. Without one they score 0, like a draw, and
+     * only wins and losses found within the depth tell moves apart; a search that always
+     * reaches the end of the game is a little faster that way. Boards too large for a
+     * WinLines table are never scored heuristically.
+     * 
+     * @param evaluation true to score positions heuristically, false to score them 0.
+     */
+    public void setEvaluation(boolean evaluation)
+    {
+        this.evaluation = evaluation;
+        evaluator = newEvaluator();
+    }
+    
+    /**
+     * Replaces the move ordering, for example to share one between several searches of the
+     * same game.
+     * 
+     * @param ordering the ordering to use; it must be for a board of the same size.
+     */
+    public void setMoveOrdering(MoveOrdering ordering)
+    {
+        this.ordering = ordering;
+    }
+    
+    /**
+     * Get the move ordering, which also counts how often the first move caused a cutoff.
+     * 
+     * @return the ordering used by this search.
+     */
+    public MoveOrdering getMoveOrdering()
+    {
+        return ordering;
+    }
+    
+    /**
+     * Sets the number of nodes after which a search stops early. When that happens the search
+     * returns the best move among the moves it finished searching.
+     * 
+     * @param nodeLimit the maximum number of nodes per search.
+     */
+    public void setNodeLimit(long nodeLimit)
+    {
+        this.nodeLimit = nodeLimit;
+    }
+    
+    /**
+     * Sets the time after which a search stops early. When that happens the search returns
+     * the best move among the moves it finished searching.
+     * 
+     * @param deadline the System.nanoTime() value to stop at, or Long.MAX_VALUE for no limit.
+     */
+    public void setDeadline(long deadline)
+    {
+        this.deadline = deadline;
+    }
+    
+    /**
+     * Asks a search running in another thread to stop as soon as possible. The search stops
+     * within a few hundred nodes and returns as if it had reached its deadline. Every later
+     * search stops at once until the request is cleared with stop(false).
+     * 
+     * @param stop true to stop searching, false to allow searching again.
+     */
+    public void stop(boolean stop)
+    {
+        stopRequested = stop;
+    }
+    
+    /**
+     * Searches the position to the given depth.
+     * 
+     * @param depth the number of plies to look ahead.
+     * @return the column of the best move, or -1 if there is no legal move.
+     */
+    public int search(int depth)
+    {
+        nodes = 0;
+        tableProbes = 0;
+        tableHits = 0;
+        stopped = false;
+        int bestMove = -1;
+        bestScore = -INFINITY;
+        reserveMoveLists(0, depth);
+        for (int column : columnOrder)
+        {
+            if (board.getColumn(column).getIsFull())
+            {
+                continue;
+            }
+            if (board.isWinningMove(column))
+            {
+                bestScore = WIN_SCORE - 1;
+                return column;
+            }
+            if (bestMove == -1)
+            {
+                bestMove = column;  // any legal move is better than none if the search stops at once
+            }
+        }
+        long key = 0L;
+        int tableMove = -1;
+        if (table != null)
+        {
+            key = positionKey();
+            long entry = table.probe(key);
+            tableProbes++;
+            if (entry != TranspositionTable.NO_ENTRY)
+            {
+                tableHits++;
+                tableMove = TranspositionTable.getMove(entry);
+            }
+        }
+        int alpha = -INFINITY;
+        int[] moves = moveLists[0];
+        int count = ordering.order(board, 0, tableMove, moves);
+        for (int i = 0; i < count; i++)
+        {
+            int column = moves[i];
+            play(column);
+            int score = -negamax(depth - 1, 1, -INFINITY, -alpha);
+            undo();
+            if (stopped)
+            {
+                break;
+            }
+            if (score > alpha)
+            {
+                alpha = score;
+                bestScore = score;
+                bestMove = column;
+            }
+        }
+        if (table != null && !stopped)
+        {
+            table.store(key, depth, toTable(bestScore, 0), TranspositionTable.EXACT, bestMove);
+        }
+        return bestMove;
+    }
+    
+    /**
+     * Scores the position for the player to move within a search window, without choosing a
+     * move. This lets a search that is split across threads hand whole subtrees to separate
+     * AlphaBetaSearch objects.
+     * 
+     * @param depth the number of plies to look ahead.
+     * @param ply the number of plies the position is below the root of the whole search,
+     * which wins and losses are counted from.
+     * @param alpha the score the player to move is already guaranteed.
+     * @param beta the score above which the opponent will avoid this position.
+     * @return the score of the position, or 0 if the search was stopped.
+     */
+    public int evaluate(int depth, int ply, int alpha, int beta)
+    {
+        nodes = 0;
+        tableProbes = 0;
+        tableHits = 0;
+        stopped = false;
+        reserveMoveLists(ply, depth);
+        return negamax(depth, ply, alpha, beta);
+    }
+    
+    /**
+     * Scores the current position for the player to move.
+     * 
+     * @param depth the number of plies left to search.
+     * @param ply the number of plies from the root of the search.
+     * @param alpha the score the player to move is already guaranteed.
+     * @param beta the score above which the opponent will avoid this position.
+     * @return the score of the position, or 0 if the search was stopped.
+     */
+    private int negamax(int depth, int ply, int alpha, int beta)
+    {
+        nodes++;
+        if (nodes >= nodeLimit || ((nodes & 255) == 0 && (stopRequested || System.nanoTime() >= deadline)))
+        {
+            stopped = true;
+            return 0;
+        }
+        if (board.getMoveCount() == board.getColumnCount() * board.getRowCount())
+        {
+            return 0;   // the board is full: a draw
+        }
+        for (int column : columnOrder)
+        {
+            if (board.isWinningMove(column))
+            {
+                return WIN_SCORE - ply - 1;
+            }
+        }
+        if (depth <= 0)
+        {
+            return evaluator == null ? 0 : evaluator.getScore(board.isRedTurn());
+        }
+        long key = 0L;
+        int tableMove = -1;
+        int alphaOriginal = alpha;
+        if (table != null)
+        {
+            key = positionKey();
+            long entry = table.probe(key);
+            tableProbes++;
+            if (entry != TranspositionTable.NO_ENTRY)
+            {
+                tableHits++;
+                tableMove = TranspositionTable.getMove(entry);
+                if (TranspositionTable.getDepth(entry) >= depth)
+                {
+                    int score = fromTable(TranspositionTable.getScore(entry), ply);
+                    int bound = TranspositionTable.getBound(entry);
+                    if (bound == TranspositionTable.EXACT)
+                    {
+                        return score;
+                    }
+                    else if (bound == TranspositionTable.LOWER_BOUND)
+                    {
+                        alpha = Math.max(alpha, score);
+                    }
+                    else
+                    {
+                        beta = Math.min(beta, score);
+                    }
+                    if (alpha >= beta)
+                    {
+                        return score;
+                    }
+                }
+            }
+        }
+        int best = -INFINITY;
+        int bestMove = -1;
+        int[] moves = moveLists[ply];
+        int count = ordering.order(board, ply, tableMove, moves);
+        for (int i = 0; i < count; i++)
+        {
+            int column = moves[i];
+            play(column);
+            int score = -negamax(depth - 1, ply + 1, -beta, -alpha);
+            undo();
+            if (stopped)
+            {
+                return 0;
+            }
+            if (score > best)
+            {
+                best = score;
+                bestMove = column;
+            }
+            if (score > alpha)
+            {
+                alpha = score;
+                if (alpha >= beta)
+                {
+                    ordering.recordCutoff(board, ply, column, depth, i);
+                    break;
+                }
+            }
+        }
+        if (table != null)
+        {
+            int bound = best <= alphaOriginal ? TranspositionTable.UPPER_BOUND
+                : best >= beta ? TranspositionTable.LOWER_BOUND : TranspositionTable.EXACT;
+            table.store(key, depth, toTable(best, ply), bound, bestMove);
+        }
+        return best;
+    }
+    
+    /**
+     * Makes sure there is a move list for every ply a search can reach, so a search only
+     * allocates lists for the plies it actually uses.
+     * 
+     * @param ply the ply the search starts at.
+     * @param depth the depth of the search; no search goes deeper than the empty slots.
+     */
+    private void reserveMoveLists(int ply, int depth)
+    {
+        int emptySlots = board.getColumnCount() * board.getRowCount() - board.getMoveCount();
+        int needed = ply + Math.max(1, Math.min(depth, emptySlots)) + 1;
+        if (needed <= moveLists.length)
+        {
+            return;
+        }
+        int old = moveLists.length;
+        moveLists = Arrays.copyOf(moveLists, Math.max(needed, Math.min(2 * old, ply + emptySlots + 1)));
+        for (int i = old; i < moveLists.length; i++)
+        {
+            moveLists[i] = new int[board.getColumnCount()];
+        }
+    }
+    
+    /**
+     * Creates the evaluator of the current position, if positions are to be scored and the
+     * board is small enough to have a WinLines table.
+     * 
+     * @return the evaluator, or null if positions are not scored.
+     */
+    private LineEvaluator newEvaluator()
+    {
+        if (!evaluation || !WinLines.isSupported(board.getColumnCount(), board.getRowCount(), board.getWinLength()))
+        {
+            return null;
+        }
+        return new LineEvaluator(board);
+    }
+    
+    /**
+     * Plays a move on the board, keeping the evaluator up to date.
+     * 
+     * @param column the column to play in.
+     */
+    private void play(int column)
+    {
+        boolean red = board.isRedTurn();
+        int row = board.play(column);
+        if (evaluator != null)
+        {
+            evaluator.place(column, row, red);
+        }
+    }
+    
+    /**
+     * Takes back the last move played on the board, keeping the evaluator up to date.
+     */
+    private void undo()
+    {
+        if (evaluator != null)
+        {
+            evaluator.remove(board.getLastColumn(), board.getLastRow(), !board.isRedTurn());
+        }
+        board.undo();
+    }
+    
+    /**
+     * Computes the table key of the current position, including the player to move.
+     * 
+     * @return the key of the position.
+     */
+    private long positionKey()
+    {
+        return board.getHash() ^ sizeKey ^ (board.isRedTurn() ? RED_TO_MOVE : 0L);
+    }
+    
+    /**
+     * Converts a win or loss score from "plies from the root" to "plies from this position" so
+     * that it stays correct when the position is reached at another ply.
+     * 
+     * @param score the score of the position.
+     * @param ply the number of plies from the root.
+     * @return the score to store.
+     */
+    private static int toTable(int score, int ply)
+    {
+        if (score > WIN_SCORE - MAX_PLY)
+        {
+            return score + ply;
+        }
+        if (score < -WIN_SCORE + MAX_PLY)
+        {
+            return score - ply;
+        }
+        return score;
+    }
+    
+    /**
+     * Converts a stored score back to "plies from the root".
+     * 
+     * @param score the stored score.
+     * @param ply the number of plies from the root.
+     * @return the score of the position.
+     */
+    private static int fromTable(int score, int ply)
+    {
+        if (score > WIN_SCORE - MAX_PLY)
+        {
+            return score - ply;
+        }
+        if (score < -WIN_SCORE + MAX_PLY)
+        {
+            return score + ply;
+        }
+        return score;
+    }
+    
+    /**
+     * Get the score of the move returned by the last search.
+     * 
+     * @return the score for the player to move.
+     */
+    public int getBestScore()
+    {
+        return bestScore;
+    }
+    
+    /**
+     * Checks if a score is a forced win or loss, which no deeper search can change. Every win
+     * or loss the search can store is within MAX_PLY plies of WIN_SCORE, whatever the size of
+     * the board, and no heuristic score comes that close.
+     * 
+     * @param score a score returned by a search.
+     * @return true if the score is a win or a loss, false otherwise.
+     */
+    public static boolean isDecided(int score)
+    {
+        return Math.abs(score) > WIN_SCORE - MAX_PLY;
+    }
+    
+    /**
+     * Get the number of nodes visited by the last search.
+     * 
+     * @return the node count.
+     */
+    public long getNodes()
+    {
+        return nodes;
+    }
+    
+    /**
+     * Get the number of transposition table lookups made by the last search.
+     * 
+     * @return the number of probes, or 0 if no table is set.
+     */
+    public long getTableProbes()
+    {
+        return tableProbes;
+    }
+    
+    /**
+     * Get the number of transposition table lookups of the last search that found their
+     * position.
+     * 
+     * @return the number of hits.
+     */
+    public long getTableHits()
+    {
+        return tableHits;
+    }
+    
+    /**
+     * Check whether the last search stopped early because it reached the node limit or the
+     * deadline, or was asked to stop.
+     * 
+     * @return true if the search was stopped, false if it finished.
+     */
+    public boolean wasStopped()
+    {
+        return stopped;
+    }
+}
@@ -1,11 +1,17 @@
 /**
  * A single column in a Connect 4 game. A column stores a number of individual slots.
  * 
+ * The column is a view onto the board stored by its Connect4Game; it holds no token state
+ * of its own. Its slot views are created the first time they are asked for.
+ * 
  * You should not modify this class, but you will need to use methods within it.
  */
 public class Connect4Column
 {
-    private Connect4Slot[] slots;
+    private final Connect4Game game;    // the game whose board this column views
+    private final int index;    // the index of this column within the game
+    private final int rowCount; // the number of rows in the column
+    private Connect4Slot[] slots;   // the slot views handed out so far, allocated on first use
     
     /**
      * Creates a new Connect4Column with a given height.
@@ -16,11 +22,7 @@ public class Connect4Column
      */
     public Connect4Column(int height)
     {
-        slots = new Connect4Slot[height];
-        for (int i = 0; i < height; i++)
-        {
-            slots[i] = new Connect4Slot();
-        }
+        this(new Connect4Game(1, height), 0);
     }
     /**
      * Creates a copy of the given Connect4Column.
@@ -31,12 +33,29 @@ public class Connect4Column
      */
     public Connect4Column(Connect4Column column)
     {
-        this.slots = new Connect4Slot[column.getRowCount()];
-        for (int i = 0; i < column.getRowCount(); i++)
+        this(column.getRowCount());
+        for (int i = column.getRowCount() - 1; i >= 0; i--)
         {
-            slots[i] = new Connect4Slot(column.getSlot(i));
+            if (column.game.isFilled(column.index, i))
+            {
+                game.placeToken(0, i, column.game.isRed(column.index, i));
+            }
         }
     }
+    /**
+     * Creates a view of one column of a game's board.
+     * 
+     * Your agent will not need to use this method.
+     * 
+     * @param game the game whose board is viewed.
+     * @param index the index of the column within the game.
+     */
+    Connect4Column(Connect4Game game, int index)
+    {
+        this.game = game;
+        this.index = index;
+        this.rowCount = game.getRowCount();
+    }
     /**
      * Returns a single Connect4Slot from the column.
      * 
@@ -47,8 +66,16 @@ public class Connect4Column
      */
     public Connect4Slot getSlot(int i)
     {
-        if (i < slots.length && i >= 0)
+        if (i < rowCount && i >= 0)
         {
+            if (slots == null)
+            {
+                slots = new Connect4Slot[rowCount];
+            }
+            if (slots[i] == null)
+            {
+                slots[i] = new Connect4Slot(game, index, i);
+            }
             return slots[i];
         }
         else
@@ -65,14 +92,37 @@ public class Connect4Column
      */
     public boolean getIsFull()
     {
-        for (Connect4Slot slot : slots)
+        return game.getColumnHeight(index) == rowCount;
+    }
+    /**
+     * Returns the index of the lowest empty slot in the column, which is where a dropped token
+     * would land. Row 0 is the top of the column.
+     * 
+     * Your agent may use this method.
+     * 
+     * @return the index of the lowest empty slot; -1 if the column is full.
+     */
+    public int lowestEmptyIndex()
+    {
+        return rowCount - 1 - game.getColumnHeight(index);
+    }
+    /**
+     * Drops a token into the column so that it falls to the lowest empty slot.
+     * If the column is already full, nothing will change.
+     * 
+     * Your agent may use this method.
+     * 
+     * @param red true to drop a red token, false to drop a yellow token.
+     * @return the index of the slot the token landed in; -1 if the column was full.
+     */
+    public int drop(boolean red)
+    {
+        int row = lowestEmptyIndex();
+        if (row > -1)
         {
-            if (!slot.getIsFilled())
-            {
-                return false;
-            }
+            game.placeToken(index, row, red);
         }
-        return true;
+        return row;
     }
     /**
      * Returns the number of rows in the column.
@@ -83,6 +133,6 @@ public class Connect4Column
      */
     public int getRowCount()
     {
-        return slots.length;
+        return rowCount;
     }
 }
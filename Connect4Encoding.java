@@ -0,0 +1,295 @@
+import java.util.Arrays;
+
+/**
+ * Compact encodings of Connect 4 positions, for opening books, result caches and game archives.
+ * 
+ * Every column is written as rowCount + 1 bits: one bit per stacked token, counted from the
+ * bottom (1 for red, 0 for yellow), followed by a single 1 bit just above the top token. The
+ * marker bit tells where the column ends, so no separate heights are needed.
+ * 
+ * Boards that fit in 63 bits, such as the standard 7x6 board, are encoded as a single long
+ * key (see Connect4Game.getPositionKey()). Any other board is packed into a byte array that
+ * starts with the board size and win length. Both forms have a canonical version that is the
+ * same for a position and its left-to-right mirror image.
+ * 
+ * Only positions whose tokens all rest on the tokens below them can be encoded; that is every
+ * position reachable in a valid game.
+ * 
+ * Your agent may use this class.
+ */
+public class Connect4Encoding
+{
+    /**
+     * Encodes a position as a single long key.
+     * 
+     * @param game the game to encode.
+     * @return the position key, or -1 if the board needs more than 63 bits or has a token
+     * that is not resting on the tokens below it.
+     */
+    public static long encode(Connect4Game game)
+    {
+        return game.getPositionKey();
+    }
+    
+    /**
+     * Encodes a position as a single long key that is the same for the position and its
+     * left-to-right mirror image.
+     * 
+     * @param game the game to encode.
+     * @return the smaller of the keys of the position and its mirror image, or -1 if the
+     * position cannot be encoded as a long.
+     */
+    public static long encodeCanonical(Connect4Game game)
+    {
+        long key = game.getPositionKey();
+        if (key == -1)
+        {
+            return -1;
+        }
+        return Math.min(key, mirror(key, game.getColumnCount(), game.getRowCount()));
+    }
+    
+    /**
+     * Encodes a position as a single long key in which the tokens of the player to move count
+     * as red, so that positions that differ only in who played first share a key.
+     * 
+     * @param game the game to encode.
+     * @return the position key, or -1 if the position cannot be encoded as a long.
+     */
+    public static long encodeForMover(Connect4Game game)
+    {
+        long key = game.getPositionKey();
+        if (key == -1 || game.isRedTurn())
+        {
+            return key;
+        }
+        return swapColors(key, game.getColumnCount(), game.getRowCount());
+    }
+    
+    /**
+     * Mirrors a position key left to right.
+     * 
+     * @param key the key to mirror.
+     * @param columns the number of columns of the board.
+     * @param rows the number of rows of the board.
+     * @return the key of the mirrored position.
+     */
+    public static long mirror(long key, int columns, int rows)
+    {
+        int stride = rows + 1;
+        long columnMask = (1L << stride) - 1;
+        long mirrored = 0L;
+        for (int i = 0; i < columns; i++)
+        {
+            mirrored |= ((key >>> (i * stride)) & columnMask) << ((columns - 1 - i) * stride);
+        }
+        return mirrored;
+    }
+    
+    /**
+     * Swaps the colors of every token in a position key, so red tokens become yellow and
+     * yellow tokens become red.
+     * 
+     * @param key the key to change.
+     * @param columns the number of columns of the board.
+     * @param rows the number of rows of the board.
+     * @return the key of the position with the colors swapped.
+     */
+    public static long swapColors(long key, int columns, int rows)
+    {
+        int stride = rows + 1;
+        long swapped = key;
+        for (int i = 0; i < columns; i++)
+        {
+            long column = (key >>> (i * stride)) & ((1L << stride) - 1);
+            int height = 63 - Long.numberOfLeadingZeros(column);
+            swapped ^= ((1L << height) - 1) << (i * stride);    // flip the token bits below the marker
+        }
+        return swapped;
+    }
+    
+    /**
+     * Rebuilds a game from a position key.
+     * 
+     * The new game's move history lists the tokens column by column rather than in the order
+     * they were played. If there is one more red token than yellow tokens, the game records
+     * that red played first.
+     * 
+     * @param key the position key.
+     * @param columns the number of columns of the board.
+     * @param rows the number of rows of the board.
+     * @param winLength the number of tokens in a row needed to win.
+     * @return a new game holding the position.
+     */
+    public static Connect4Game decode(long key, int columns, int rows, int winLength)
+    {
+        Connect4Game game = new Connect4Game(columns, rows, winLength);
+        int stride = rows + 1;
+        for (int i = 0; i < columns; i++)
+        {
+            long column = (key >>> (i * stride)) & ((1L << stride) - 1);
+            int height = 63 - Long.numberOfLeadingZeros(column);
+            for (int k = 0; k < height; k++)
+            {
+                game.placeToken(i, rows - 1 - k, ((column >>> k) & 1) != 0);
+            }
+        }
+        game.setRedPlayedFirst(game.getRedCount() > game.getYellowCount());
+        return game;
+    }
+    
+    /**
+     * Packs a position of any size into a byte array. The array starts with the number of
+     * columns, the number of rows and the win length, followed by the columns' bits.
+     * 
+     * @param game the game to pack.
+     * @return the packed position, or null if a token is not resting on the tokens below it.
+     */
+    public static byte[] pack(Connect4Game game)
+    {
+        return pack(game, false);
+    }
+    
+    /**
+     * Packs a position into a byte array that is the same for the position and its
+     * left-to-right mirror image.
+     * 
+     * @param game the game to pack.
+     * @return the smaller (comparing unsigned bytes) of the packed position and its mirror
+     * image, or null if a token is not resting on the tokens below it.
+     */
+    public static byte[] packCanonical(Connect4Game game)
+    {
+        byte[] packed = pack(game, false);
+        if (packed == null)
+        {
+            return null;
+        }
+        byte[] mirrored = pack(game, true);
+        return compareUnsigned(packed, mirrored) <= 0 ? packed : mirrored;
+    }
+    
+    /**
+     * Rebuilds a game from a packed position.
+     * 
+     * The new game's move history lists the tokens column by column rather than in the order
+     * they were played. If there is one more red token than yellow tokens, the game records
+     * that red played first.
+     * 
+     * @param packed the packed position.
+     * @return a new game holding the position.
+     */
+    public static Connect4Game unpack(byte[] packed)
+    {
+        int[] position = { 0 };
+        int columns = readVarInt(packed, position);
+        int rows = readVarInt(packed, position);
+        int winLength = readVarInt(packed, position);
+        Connect4Game game = new Connect4Game(columns, rows, winLength);
+        long bit = 8L * position[0];
+        for (int i = 0; i < columns; i++)
+        {
+            int height = rows;  // the marker is the highest set bit of the column
+            while (!readBit(packed, bit + height))
+            {
+                height--;
+            }
+            for (int k = 0; k < height; k++)
+            {
+                game.placeToken(i, rows - 1 - k, readBit(packed, bit + k));
+            }
+            bit += rows + 1;
+        }
+        game.setRedPlayedFirst(game.getRedCount() > game.getYellowCount());
+        return game;
+    }
+    
+    /**
+     * Packs a position, optionally mirrored left to right.
+     * 
+     * @param game the game to pack.
+     * @param mirrored whether to write the columns in reverse order.
+     * @return the packed position, or null if a token is not resting on the tokens below it.
+     */
+    private static byte[] pack(Connect4Game game, boolean mirrored)
+    {
+        int columns = game.getColumnCount(), rows = game.getRowCount();
+        byte[] header = new byte[15];
+        int[] position = { 0 };
+        writeVarInt(header, position, columns);
+        writeVarInt(header, position, rows);
+        writeVarInt(header, position, game.getWinLength());
+        long bits = (long) columns * (rows + 1);
+        byte[] packed = Arrays.copyOf(header, position[0] + (int) ((bits + 7) / 8));
+        long bit = 8L * position[0];
+        for (int n = 0; n < columns; n++)
+        {
+            int i = mirrored ? columns - 1 - n : n;
+            int height = game.getColumnHeight(i);
+            if (game.getTokenCount(i) != height)
+            {
+                return null;
+            }
+            for (int k = 0; k < height; k++)
+            {
+                if (game.isRed(i, rows - 1 - k))
+                {
+                    setBit(packed, bit + k);
+                }
+            }
+            setBit(packed, bit + height);
+            bit += rows + 1;
+        }
+        return packed;
+    }
+    
+    /**
+     * Compares two byte arrays as unsigned bytes, first byte first; a prefix of an array comes
+     * before the array. This is Arrays.compareUnsigned(...), which Java 8 does not have.
+     */
+    private static int compareUnsigned(byte[] a, byte[] b)
+    {
+        for (int i = 0; i < Math.min(a.length, b.length); i++)
+        {
+            if (a[i] != b[i])
+            {
+                return (a[i] & 0xFF) - (b[i] & 0xFF);
+            }
+        }
+        return a.length - b.length;
+    }
+    
+    private static void writeVarInt(byte[] bytes, int[] position, int value)
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            bytes[position[0]++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position[0]++] = (byte) value;
+    }
+    
+    private static int readVarInt(byte[] bytes, int[] position)
+    {
+        int value = 0;
+        for (int shift = 0; ; shift += 7)
+        {
+            byte b = bytes[position[0]++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0)
+            {
+                return value;
+            }
+        }
+    }
+    
+    private static void setBit(byte[] bytes, long bit)
+    {
+        bytes[(int) (bit >>> 3)] |= (byte) (1 << (bit & 7));
+    }
+    
+    private static boolean readBit(byte[] bytes, long bit)
+    {
+        return (bytes[(int) (bit >>> 3)] & (1 << (bit & 7))) != 0;
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * A cheap record of a Connect 4 board, used to check that exactly one valid move was made.
+ * 
+ * Instead of copying every slot, the fingerprint keeps the height, token count and hash of
+ * each column. After a move, validate(...) compares these with the game in O(columns) time and
+ * reports the same kinds of invalid moves as Connect4Game.validate(...).
+ * 
+ * A fingerprint can be reused: call record(...) again before each move.
+ * 
+ * Your agent will not need to use this class.
+ */
+public class Connect4Fingerprint
+{
+    private int rowCount;   // the number of rows in the recorded board
+    private int[] heights;  // the number of filled slots stacked from the bottom of each column
+    private int[] tokenCounts;  // the number of tokens in each column
+    private long[] columnHashes;    // the hash of the tokens in each column
+    
+    /**
+     * Creates a fingerprint of the current state of a game.
+     * 
+     * Your agent will not need to use this method.
+     * 
+     * @param game the game to record.
+     */
+    public Connect4Fingerprint(Connect4Game game)
+    {
+        heights = new int[game.getColumnCount()];
+        tokenCounts = new int[game.getColumnCount()];
+        columnHashes = new long[game.getColumnCount()];
+        record(game);
+    }
+    
+    /**
+     * Records the current state of a game, replacing what was recorded before.
+     * 
+     * Your agent will not need to use this method.
+     * 
+     * @param game the game to record; it must have the same size as the game first recorded.
+     */
+    public void record(Connect4Game game)
+    {
+        rowCount = game.getRowCount();
+        for (int i = 0; i < heights.length; i++)
+        {
+            heights[i] = game.getColumnHeight(i);
+            tokenCounts[i] = game.getTokenCount(i);
+            columnHashes[i] = game.getColumnHash(i);
+        }
+    }
+    
+    /**
+     * Validate that the given game is a valid next state following the recorded board.
+     * 
+     * Your agent will not need to use this method.
+     * 
+     * @param after the game after the move.
+     * @return an error message if the move was invalid, or an empty string if it was valid.
+     */
+    public String validate(Connect4Game after)
+    {
+        int filledSlots = 0;
+        for (int i = 0; i < heights.length; i++)
+        {
+            int added = after.getTokenCount(i) - tokenCounts[i];
+            if (added < 0)
+            {
+                int row = removedRow(after, i);
+                if (row > -1)
+                {
+                    return "Invalid move: a token was removed at column " + i + ", row " + row + ".";
+                }
+                return "Invalid move: a token was removed from column " + i + ".";
+            }
+            if (added == 0 && after.getColumnHash(i) != columnHashes[i])
+            {
+                return "Invalid move: a token was changed in column " + i + ".";
+            }
+            if (after.getTokenCount(i) != after.getColumnHeight(i))
+            {
+                return "Invalid move: a token in column " + i + " was not placed in the highest open slot.";
+            }
+            if (added == 1)
+            {
+                // the column is stacked, so the new token is the top one; everything else must be unchanged
+                int row = rowCount - after.getColumnHeight(i);
+                long key = Connect4Game.zobristKey(i * rowCount + row, after.isRed(i, row));
+                if ((columnHashes[i] ^ key) != after.getColumnHash(i))
+                {
+                    return "Invalid move: a token was changed in column " + i + ".";
+                }
+            }
+            filledSlots += added;
+        }
+        if (filledSlots > 1)
+        {
+            return "Invalid move: more than one token was placed.";
+        }
+        if (filledSlots == 0)
+        {
+            return "Invalid move: no move was made.";
+        }
+        int redSlots = after.getRedCount(), yellowSlots = after.getYellowCount();
+        if (after.getRedPlayedFirst())
+        {
+            if (redSlots < yellowSlots)
+            {
+                return "Invalid move: yellow moved during red's turn.";
+            }
+            else if (redSlots > yellowSlots + 1)
+            {
+                return "Invalid move: red moved during yellow's turn.";
+            }
+        }
+        else
+        {
+            if (yellowSlots < redSlots)
+            {
+                return "Invalid move: red moved during yellow's turn.";
+            }
+            else if (yellowSlots > redSlots + 1)
+            {
+                return "Invalid move: yellow moved during red's turn.";
+            }
+        }
+        return "";
+    }
+    
+    /**
+     * Finds the topmost slot that was filled when the column was recorded and is now empty.
+     * This is only known when the recorded column had no gaps.
+     * 
+     * @param after the game after the move.
+     * @param column the column to search.
+     * @return the row of the removed token; -1 if it cannot be determined.
+     */
+    private int removedRow(Connect4Game after, int column)
+    {
+        if (tokenCounts[column] == heights[column])
+        {
+            for (int j = rowCount - heights[column]; j < rowCount; j++)
+            {
+                if (!after.isFilled(column, j))
+                {
+                    return j;
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -1,6 +1,7 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.util.ArrayList;
 import java.util.Random;
 
 /**
@@ -15,9 +16,10 @@ public class Connect4Frame extends JFrame
     Connect4Game myGame;    // the game itself
     Agent redPlayer, yellowPlayer;   // the two players playing the game
     boolean redPlayerturn, gameActive;  // booleans controlling whose turn it is and whether a game is ongoing
-    JButton newGameButton, nextMoveButton, playToEndButton;   // the buttons controlling the game
+    JButton newGameButton, nextMoveButton, undoMoveButton, playToEndButton;   // the buttons controlling the game
     JLabel updateLabel; // the status label describing the events of the game
     Random r;   // a random number generator to randomly decide who plays first
+    ArrayList<Connect4Snapshot> history;    // the board before each move of the current game, for validation and taking moves back
 
     /**
      * Creates a new Connect4Frame with a given game and pair of players.
@@ -37,6 +39,7 @@ public class Connect4Frame extends JFrame
         this.yellowPlayer = yellowPlayer; //stores the yellow player
         gameActive = false;   // initially sets that no game is active
         r = new Random();   // creates the random number generator
+        history = new ArrayList<>();    // creates the empty game history
 
         myPanel = new Connect4Panel(game);  // creates the panel for displaying the game
 
@@ -59,6 +62,16 @@ public class Connect4Frame extends JFrame
                 }
             });
 
+        undoMoveButton = new JButton("Take Back Move");    // creates the button for taking back the last move
+        undoMoveButton.setEnabled(false);   // disables the button until a move has been played
+        undoMoveButton.setAlignmentX(Component.CENTER_ALIGNMENT);   // centers the button
+        undoMoveButton.addActionListener(new ActionListener() { // connects the take back move button to its buttonPressed method
+                public void actionPerformed(ActionEvent e)
+                {
+                    undoMoveButtonPressed();
+                }
+            });
+
         playToEndButton = new JButton("Play to End");   // creates the button for finishing the game
         playToEndButton.setEnabled(false);  // disables the button until a game is started
         playToEndButton.setAlignmentX(Component.CENTER_ALIGNMENT);  // centers the button
@@ -80,6 +93,8 @@ public class Connect4Frame extends JFrame
         buttonPane.add(Box.createRigidArea(new Dimension(10,0)));
         buttonPane.add(nextMoveButton);
         buttonPane.add(Box.createRigidArea(new Dimension(10,0)));
+        buttonPane.add(undoMoveButton);
+        buttonPane.add(Box.createRigidArea(new Dimension(10,0)));
         buttonPane.add(playToEndButton);
         buttonPane.add(Box.createHorizontalGlue());
 
@@ -90,6 +105,12 @@ public class Connect4Frame extends JFrame
         this.pack();    // shrinks the window to the appropriate size
         this.setResizable(false);   // makes the window not resizable
         this.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);    // close the application when the window is closed
+        this.addWindowListener(new WindowAdapter() {    // tell the players when the window closes in the middle of a game
+                public void windowClosing(WindowEvent e)
+                {
+                    endGame();
+                }
+            });
         this.setVisible(true);  // show the window
     }
 
@@ -113,7 +134,8 @@ public class Connect4Frame extends JFrame
      */
     private void nextMove()
     {
-        Connect4Game oldBoard = new Connect4Game(myGame);   // store the old board for validation
+        Connect4Snapshot oldBoard = myGame.snapshot();  // store the old board for validation; it shares unchanged columns with earlier snapshots
+        history.add(oldBoard);
         if(redPlayerturn) // if it's the red player's turn, run their move
         {
             redPlayer.move();
@@ -131,17 +153,21 @@ public class Connect4Frame extends JFrame
             disableButtons();   // stop the game
             gameActive = false;
         }
+        else    // tell the other player what was just played
+        {
+            (redPlayerturn ? yellowPlayer : redPlayer).opponentMoved(myGame.getLastColumn());
+        }
         redPlayerturn = !redPlayerturn;   // switch whose turn it is
         char won = myGame.gameWon();    // check if the game has been won
         if (won != 'N') // if the game has been won...
         {
             disableButtons();   // disable the buttons
             gameActive = false;
-            if (myGame.gameWon() == 'R') // if red won, say so
+            if (won == 'R') // if red won, say so
             {
                 alert(redPlayer.toString() + " wins!");
             }
-            else if (myGame.gameWon() == 'Y') // if yellow won, say so
+            else if (won == 'Y') // if yellow won, say so
             {
                 alert(yellowPlayer.toString() + " wins!");
             }
@@ -152,9 +178,59 @@ public class Connect4Frame extends JFrame
             alert("The game ended in a draw!"); // announce the draw
             gameActive = false;
         }
+        if (!gameActive)    // if the game is over, tell the players
+        {
+            redPlayer.gameOver();
+            yellowPlayer.gameOver();
+        }
+        undoMoveButton.setEnabled(gameActive);  // a move has been played that can be taken back
+        this.repaint();
+    }
+
+    /**
+     * Takes back the last move of the game, and checks that the board is back to the
+     * snapshot taken before that move.
+     * 
+     * Your agent will not need to use this method.
+     */
+    private void undoMove()
+    {
+        if (!gameActive || history.isEmpty())
+        {
+            return;
+        }
+        Connect4Snapshot before = history.remove(history.size() - 1);  // the board as it was before the last move
+        myGame.undo();
+        if (myGame.getMoveCount() != before.getMoveCount() || myGame.getHash() != before.getHash())
+        {
+            alert("The last move could not be taken back.");  // the board no longer matches its history
+            disableButtons();   // stop the game
+            endGame();
+        }
+        else
+        {
+            redPlayerturn = !redPlayerturn;   // the player who made the move plays again
+            alert((redPlayerturn ? redPlayer : yellowPlayer).toString() + " plays next...");
+            undoMoveButton.setEnabled(!history.isEmpty());
+        }
         this.repaint();
     }
 
+    /**
+     * Ends the game if one is still going, and tells the players.
+     * 
+     * Your agent will not need to use this method.
+     */
+    private void endGame()
+    {
+        if (gameActive)
+        {
+            gameActive = false;
+            redPlayer.gameOver();
+            yellowPlayer.gameOver();
+        }
+    }
+
     /**
      * Clear the board and start a new game.
      * 
@@ -162,7 +238,9 @@ public class Connect4Frame extends JFrame
      */
     private void newGame()
     {
+        endGame();  // a game still going is abandoned
         myGame.clearBoard();
+        history.clear();
         enableButtons();
         gameActive = true;
         redPlayerturn = r.nextBoolean();
@@ -194,11 +272,11 @@ public class Connect4Frame extends JFrame
         if (won != 'N') // when it ends, announce how it ended: win or draw
         {
             disableButtons();
-            if (myGame.gameWon() == 'R')
+            if (won == 'R')
             {
                 alert(redPlayer.toString() + " wins!");
             }
-            else if (myGame.gameWon() == 'Y')
+            else if (won == 'Y')
             {
                 alert(yellowPlayer.toString() + " wins!");
             }
@@ -244,6 +322,16 @@ public class Connect4Frame extends JFrame
         playToEnd();
     }
 
+    /**
+     * Reacts to the take back move button being pressed.
+     * 
+     * Your agent will not need to use this method.
+     */
+    public void undoMoveButtonPressed()
+    {
+        undoMove();
+    }
+
     /**
      * Disables the buttons.
      * 
@@ -252,6 +340,7 @@ public class Connect4Frame extends JFrame
     private void disableButtons()
     {
         nextMoveButton.setEnabled(false);
+        undoMoveButton.setEnabled(false);
         playToEndButton.setEnabled(false);
     }
 
@@ -263,6 +352,7 @@ public class Connect4Frame extends JFrame
     private void enableButtons()
     {
         nextMoveButton.setEnabled(true);
+        undoMoveButton.setEnabled(!history.isEmpty());
         playToEndButton.setEnabled(true);
     }
 
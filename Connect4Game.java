@@ -1,15 +1,62 @@
+import java.util.Arrays;
+
 /**
  * The data structure for a game of Connect 4.
  * 
  * Connect4Game is made of a certain number of Connect4Columns. Each column represents
  * a column from the current state of the game.
  * 
+ * The number of tokens in a row needed to win is 4 by default, but any board size and win
+ * length can be used.
+ * 
+ * Internally the board is stored as bitboards: one bit mask per color (plus one for
+ * highlighted slots) and the filled height of every column. Each column uses rowCount + 1
+ * bits, counted from the bottom slot upwards, so the standard 7x6 board fits into a single
+ * long per color. The masks are split into chunks that are only allocated once a token lands
+ * in them, so a large board costs memory only where it has been played. The Connect4Column
+ * and Connect4Slot objects returned by this class are thin views onto that storage; they are
+ * created the first time they are asked for and reused after that, so copying a game only
+ * copies arrays.
+ * 
  * You should not modify this class, but you will need to use methods within it.
  */
 public class Connect4Game
 {
-    private Connect4Column[] columns;
+    private int columnCount;    // the number of columns in the game board
+    private int rowCount;   // the number of rows in the game board
+    private int winLength;  // the number of tokens in a row needed to win
+    private int columnStride;   // bits used per column: one per row plus an empty guard bit
+    private int chunkLength;    // the number of longs in each chunk of a bit mask
+    private long[][] redBits;   // one bit per red token, in lazily allocated chunks
+    private long[][] yellowBits;    // one bit per yellow token
+    private long[][] highlightBits; // one bit per highlighted slot
+    private int[] heights;  // the number of filled slots stacked from the bottom of each column
+    private int[] tokenCounts;  // the number of tokens anywhere in each column
+    private long[] columnHashes;    // Zobrist hash of the tokens in each column
+    private int redCount, yellowCount;  // the number of tokens of each color on the board
+    private Connect4Column[] columns;   // the column views handed out to agents, created when first asked for
     private boolean redPlayedFirst;
+    private int lastColumn = -1, lastRow = -1;  // the most recently placed token
+    private char winner = 'N';  // the cached result of getWinner()
+    private boolean winnerKnown = true; // whether winner is up to date with the board
+    private int pendingPlacements;  // tokens placed since winner was last computed
+    private boolean fullScanNeeded; // whether a token was removed since winner was last computed
+    private int winColumn, winRow, winColumnStep, winRowStep, winLineLength;    // the winning line, if any
+    
+    private int[] moveSlots;    // the slots filled so far, in order, as column * rowCount + row
+    private int[] moveWinStates;    // the winner state saved before each move, see packWinState()
+    private int moveCount;  // the number of tokens on the move stack
+    
+    private boolean[] columnsChanged;   // which columns changed since lastSnapshot was taken
+    private boolean snapshotStale = true;   // whether anything changed since lastSnapshot was taken
+    private Connect4Snapshot lastSnapshot;  // the most recent snapshot, whose unchanged columns the next one shares
+    
+    private long hash;  // Zobrist hash of the tokens on the board
+    private long mirrorHash;    // Zobrist hash of the board mirrored left to right
+    
+    private static final int KNOWN_STATE = 4, FULL_SCAN_STATE = 8;  // flags used by packWinState()
+    private static final int CHUNK_SHIFT = 6;   // log2 of the longest chunk of a bit mask, in longs
+    private static final int[][] DIRECTIONS = { { 0, 1 }, { 1, 0 }, { 1, 1 }, { 1, -1 } };  // column and row steps of the four line directions
     
     /**
      * Construct a new Connect 4 game with the given size.
@@ -21,11 +68,36 @@ public class Connect4Game
      */
     public Connect4Game(int numCols, int numRows)
     {
-        columns=new Connect4Column[numCols];
-        for(int i = 0; i < numCols; i++)
-        {
-            columns[i] = new Connect4Column(numRows);
-        }
+        this(numCols, numRows, 4);
+    }
+    /**
+     * Construct a new game with the given size, won by the given number of tokens in a row.
+     * 
+     * Your agent will not need to use this method.
+     * 
+     * @param numCols The number of columns in the game board
+     * @param numRows The number of rows in the game board
+     * @param winLength The number of tokens in a row needed to win
+     */
+    public Connect4Game(int numCols, int numRows, int winLength)
+    {
+        this.columnCount = numCols;
+        this.rowCount = numRows;
+        this.winLength = winLength;
+        this.columnStride = numRows + 1;
+        int words = (numCols * columnStride + 63) / 64;
+        chunkLength = Math.min(words, 1 << CHUNK_SHIFT);
+        int chunks = (words + chunkLength - 1) / chunkLength;
+        redBits = new long[chunks][];
+        yellowBits = new long[chunks][];
+        highlightBits = new long[chunks][];
+        heights = new int[numCols];
+        tokenCounts = new int[numCols];
+        columnHashes = new long[numCols];
+        moveSlots = new int[Math.max(1, Math.min(numCols * numRows, 64))];
+        moveWinStates = new int[moveSlots.length];
+        columns = new Connect4Column[numCols];
+        columnsChanged = new boolean[numCols];
     }
     /**
      * Copy an existing Connect 4 game.
@@ -36,11 +108,40 @@ public class Connect4Game
      */
     public Connect4Game(Connect4Game game)
     {
-        columns = new Connect4Column[game.getColumnCount()];
-        for (int i = 0; i < game.getColumnCount(); i++)
-        {
-            columns[i] = new Connect4Column(game.getColumn(i));
-        }
+        this.columnCount = game.columnCount;
+        this.rowCount = game.rowCount;
+        this.winLength = game.winLength;
+        this.columnStride = game.columnStride;
+        this.chunkLength = game.chunkLength;
+        this.redBits = copyMask(game.redBits);
+        this.yellowBits = copyMask(game.yellowBits);
+        this.highlightBits = new long[game.highlightBits.length][];
+        this.heights = game.heights.clone();
+        this.tokenCounts = game.tokenCounts.clone();
+        this.columnHashes = game.columnHashes.clone();
+        this.redCount = game.redCount;
+        this.yellowCount = game.yellowCount;
+        this.redPlayedFirst = game.redPlayedFirst;
+        this.lastColumn = game.lastColumn;
+        this.lastRow = game.lastRow;
+        this.winner = game.winner;
+        this.winnerKnown = game.winnerKnown;
+        this.pendingPlacements = game.pendingPlacements;
+        this.fullScanNeeded = game.fullScanNeeded;
+        this.winColumn = game.winColumn;
+        this.winRow = game.winRow;
+        this.winColumnStep = game.winColumnStep;
+        this.winRowStep = game.winRowStep;
+        this.winLineLength = game.winLineLength;
+        this.moveSlots = game.moveSlots.clone();
+        this.moveWinStates = game.moveWinStates.clone();
+        this.moveCount = game.moveCount;
+        this.hash = game.hash;
+        this.mirrorHash = game.mirrorHash;
+        this.columns = new Connect4Column[columnCount];
+        this.columnsChanged = game.columnsChanged.clone();
+        this.snapshotStale = game.snapshotStale;
+        this.lastSnapshot = game.lastSnapshot;
     }
     
     /**
@@ -55,6 +156,10 @@ public class Connect4Game
     {
         if (i < columns.length && i >= 0)
         {
+            if (columns[i] == null)
+            {
+                columns[i] = new Connect4Column(this, i);
+            }
             return columns[i];
         }
         else
@@ -72,7 +177,7 @@ public class Connect4Game
      */
     public int getColumnCount()
     {
-        return columns.length;
+        return columnCount;
     }
     /**
      * Get the total number of rows in the game board.
@@ -83,22 +188,276 @@ public class Connect4Game
      */
     public int getRowCount()
     {
-        return columns[0].getRowCount();
+        return rowCount;
     }
     /**
-     * Start a new game.
+     * Get the number of tokens in a row needed to win the game.
      * 
-     * Your agent will not need to use this method.
+     * Your agent WILL need to use this method if it plays games other than Connect 4.
+     * 
+     * @return the number of tokens in a row needed to win.
      */
-    public void clearBoard()
+    public int getWinLength()
     {
-        for (int i = 0; i < getColumnCount(); i++)
+        return winLength;
+    }
+    /**
+     * Get the number of tokens stacked from the bottom of a column.
+     * 
+     * Your agent may use this method.
+     * 
+     * @param column the column to check.
+     * @return the number of filled slots in the column, counted upwards from the bottom.
+     */
+    public int getColumnHeight(int column)
+    {
+        return heights[column];
+    }
+    /**
+     * Drop a token for the player whose turn it is into the given column.
+     * 
+     * Together with undo(), this lets an agent try out moves without copying the game. Every
+     * play(...) made while thinking must be taken back with undo() before the agent makes its
+     * real move.
+     * 
+     * Your agent may use this method.
+     * 
+     * @param column the column to play in.
+     * @return the row the token landed in; -1 if the column is full.
+     */
+    public int play(int column)
+    {
+        int row = rowCount - 1 - heights[column];
+        if (row > -1)
         {
-            for (int j = 0; j < getRowCount(); j++)
+            placeToken(column, row, isRedTurn());
+        }
+        return row;
+    }
+    /**
+     * Take back the most recently placed token.
+     * 
+     * Your agent may use this method.
+     * 
+     * @return the column the token was taken from; -1 if the board is empty.
+     */
+    public int undo()
+    {
+        if (moveCount == 0)
+        {
+            return -1;
+        }
+        moveCount--;
+        int column = moveSlots[moveCount] / rowCount;
+        removeToken(column, moveSlots[moveCount] % rowCount);
+        restoreWinState(moveWinStates[moveCount]);
+        if (moveCount > 0)
+        {
+            lastColumn = moveSlots[moveCount - 1] / rowCount;
+            lastRow = moveSlots[moveCount - 1] % rowCount;
+        }
+        else
+        {
+            lastColumn = -1;
+            lastRow = -1;
+        }
+        return column;
+    }
+    /**
+     * Check if dropping a token for the player whose turn it is into the given column would
+     * win the game. The board is not changed.
+     * 
+     * Your agent may use this method.
+     * 
+     * @param column the column to check.
+     * @return true if the move would complete a line, false if not or if the column is full.
+     */
+    public boolean isWinningMove(int column)
+    {
+        int row = rowCount - 1 - heights[column];
+        if (row < 0)
+        {
+            return false;
+        }
+        long[][] bits = isRedTurn() ? redBits : yellowBits;
+        for (int[] direction : DIRECTIONS)
+        {
+            int back = countRun(bits, column, row, -direction[0], -direction[1]);
+            int forward = countRun(bits, column, row, direction[0], direction[1]);
+            if (back + 1 + forward >= winLength)
             {
-                getColumn(i).getSlot(j).clear();
+                return true;
             }
         }
+        return false;
+    }
+    /**
+     * Get the number of tokens that have been placed in the game.
+     * 
+     * Your agent may use this method.
+     * 
+     * @return the number of tokens on the board.
+     */
+    public int getMoveCount()
+    {
+        return moveCount;
+    }
+    /**
+     * Check whose turn it is, based on who played first and how many tokens have been placed.
+     * 
+     * Your agent may use this method.
+     * 
+     * @return true if red places the next token, false if yellow does.
+     */
+    public boolean isRedTurn()
+    {
+        return (moveCount % 2 == 0) == redPlayedFirst;
+    }
+    /**
+     * Get an exact 63-bit key for the position. Every column contributes rowCount + 1 bits:
+     * one bit per stacked token (1 for red, 0 for yellow) followed by a single 1 bit just
+     * above the top token. Different positions always have different keys, so the key can be
+     * stored instead of the board. See Connect4Encoding for decoding it and for larger boards.
+     * 
+     * Your agent may use this method.
+     * 
+     * @return the position key, or -1 if the board needs more than 63 bits or has a token
+     * that is not resting on the tokens below it.
+     */
+    public long getPositionKey()
+    {
+        if (columnCount * columnStride > 63)
+        {
+            return -1;
+        }
+        long key = redBits[0] == null ? 0L : redBits[0][0]; // the red tokens already sit in the right bits
+        for (int i = 0; i < columnCount; i++)
+        {
+            if (tokenCounts[i] != heights[i])
+            {
+                return -1;
+            }
+            key |= 1L << (i * columnStride + heights[i]);
+        }
+        return key;
+    }
+    /**
+     * Get a 64-bit hash of the tokens on the board. The hash is updated every time a token is
+     * placed or removed, so reading it costs nothing. Equal boards of the same size always have
+     * equal hashes.
+     * 
+     * Your agent may use this method.
+     * 
+     * @return the Zobrist hash of the current position.
+     */
+    public long getHash()
+    {
+        return hash;
+    }
+    /**
+     * Get a 64-bit hash that is the same for a position and its left-to-right mirror image.
+     * 
+     * Your agent may use this method.
+     * 
+     * @return the smaller of the hashes of the position and of its mirror image.
+     */
+    public long getCanonicalHash()
+    {
+        return Math.min(hash, mirrorHash);
+    }
+    /**
+     * Get the number of tokens in a column, including any that are not resting on the tokens
+     * below them.
+     * 
+     * Your agent will not need to use this method.
+     * 
+     * @param column the column to check.
+     * @return the number of filled slots in the column.
+     */
+    public int getTokenCount(int column)
+    {
+        return tokenCounts[column];
+    }
+    /**
+     * Get the Zobrist hash of the tokens in one column. The position hash is the XOR of all
+     * the column hashes.
+     * 
+     * Your agent will not need to use this method.
+     * 
+     * @param column the column to hash.
+     * @return the hash of the tokens in the column.
+     */
+    public long getColumnHash(int column)
+    {
+        return columnHashes[column];
+    }
+    /**
+     * Get the number of red tokens on the board.
+     * 
+     * Your agent will not need to use this method.
+     * 
+     * @return the number of red tokens.
+     */
+    public int getRedCount()
+    {
+        return redCount;
+    }
+    /**
+     * Get the number of yellow tokens on the board.
+     * 
+     * Your agent will not need to use this method.
+     * 
+     * @return the number of yellow tokens.
+     */
+    public int getYellowCount()
+    {
+        return yellowCount;
+    }
+    /**
+     * Take an unchangeable snapshot of the board. The snapshot shares every column that has
+     * not changed since the previous snapshot of this game, so taking one after every move
+     * only copies the column that was played in.
+     * 
+     * Your agent will not need to use this method.
+     * 
+     * @return a snapshot of the current board.
+     */
+    public Connect4Snapshot snapshot()
+    {
+        if (snapshotStale || lastSnapshot == null)
+        {
+            lastSnapshot = new Connect4Snapshot(this, lastSnapshot, columnsChanged);
+            Arrays.fill(columnsChanged, false);
+            snapshotStale = false;
+        }
+        return lastSnapshot;
+    }
+    /**
+     * Start a new game.
+     * 
+     * Your agent will not need to use this method.
+     */
+    public void clearBoard()
+    {
+        clearMask(redBits);
+        clearMask(yellowBits);
+        clearMask(highlightBits);
+        Arrays.fill(heights, 0);
+        Arrays.fill(tokenCounts, 0);
+        Arrays.fill(columnHashes, 0L);
+        redCount = 0;
+        yellowCount = 0;
+        lastColumn = -1;
+        lastRow = -1;
+        winner = 'N';
+        winnerKnown = true;
+        pendingPlacements = 0;
+        fullScanNeeded = false;
+        moveCount = 0;
+        hash = 0L;
+        mirrorHash = 0L;
+        Arrays.fill(columnsChanged, true);
+        snapshotStale = true;
     }
     /**
      * Retrieve a matrix form of the board.
@@ -114,9 +473,10 @@ public class Connect4Game
         {
             for(int j = 0; j < getRowCount(); j++) 
             {
-                if (getColumn(i).getSlot(j).getIsFilled())
+                int bit = bitIndex(i, j);
+                if (testBit(redBits, bit) || testBit(yellowBits, bit))
                 {
-                    if (getColumn(i).getSlot(j).getIsRed())
+                    if (testBit(redBits, bit))
                     {
                         board[j][i] = 'R';
                     }
@@ -142,21 +502,17 @@ public class Connect4Game
      */
     public boolean boardFull()
     {
-        char[][] board = getBoardMatrix();
-        for (int i = 0; i < getColumnCount(); i++)
+        for (int i = 0; i < columnCount; i++)
         {
-            for (int j = 0; j < getRowCount(); j++)
+            if (heights[i] < rowCount)
             {
-                if (board[j][i] == 'B')
-                {
-                    return false;
-                }
+                return false;
             }
         }
         return true;
     }
     /**
-     * Check if the game has been won.
+     * Check if the game has been won, highlighting the winning tokens if it has.
      * 
      * Your agent will not need to use this method.
      * 
@@ -164,63 +520,66 @@ public class Connect4Game
      */
     public char gameWon()
     {
-        char[][] board = getBoardMatrix();
-        
-        for (int i = 0; i < getColumnCount(); i++)
+        char won = getWinner();
+        if (won != 'N')
         {
-            for (int j = 0; j < getRowCount(); j++)
+            for (int k = 0; k < winLineLength; k++)
             {
-                if(board[j][i] != 'B')
-                {
-                    if (j + 3 < getRowCount())
-                    {
-                        if(board[j][i] == board[j + 1][i] && board[j][i] == board[j + 2][i] && board[j][i] == board[j + 3][i])
-                        {
-                            highlightSlot(j, i);
-                            highlightSlot(j + 1, i);
-                            highlightSlot(j + 2, i);
-                            highlightSlot(j + 3, i);
-                            return board[j][i];
-                        }
-                    }
-                    if (i + 3 < getColumnCount())
-                    {
-                        if (board[j][i] == board[j][i + 1] && board[j][i] == board[j][i + 2] && board[j][i] == board[j][i + 3])
-                        {
-                            highlightSlot(j, i);
-                            highlightSlot(j, i + 1);
-                            highlightSlot(j, i + 2);
-                            highlightSlot(j, i + 3);
-                            return board[j][i];
-                        }
-                    }
-                    if (i + 3 < getColumnCount() && j + 3 < getRowCount())
-                    {
-                        if(board[j][i] == board[j + 1][i + 1] && board[j][i] == board[j + 2][i + 2] && board[j][i] == board[j + 3][i + 3])
-                        {
-                            highlightSlot(j, i);
-                            highlightSlot(j + 1, i + 1);
-                            highlightSlot(j + 2, i + 2);
-                            highlightSlot(j + 3,i + 3);
-                            return board[j][i];
-                        }
-                    }
-                    if (i > 2 && j + 3 < getRowCount())
-                    {
-                        if (board[j][i] == board[j + 1][i - 1] && board[j][i] == board[j + 2][i - 2] && board[j][i] == board[j + 3][i - 3])
-                        {
-                            highlightSlot(j, i);
-                            highlightSlot(j + 1, i - 1);
-                            highlightSlot(j + 2, i - 2);
-                            highlightSlot(j + 3, i - 3);
-                            return board[j][i];
-                        }
-                    }
-                }
+                highlightSlot(winRow + k * winRowStep, winColumn + k * winColumnStep);
             }
         }
-
-        return 'N';
+        return won;
+    }
+    /**
+     * Check if the game has been won, without changing the board.
+     * 
+     * The result is cached until the board changes. When exactly one token has been added
+     * since the last check, only the lines through that token are examined; otherwise the
+     * whole board is scanned.
+     * 
+     * Your agent may use this method.
+     * 
+     * @return 'R' if red won, 'Y' if yellow won, 'N' if the game has not been won.
+     */
+    public char getWinner()
+    {
+        if (!winnerKnown)
+        {
+            if (fullScanNeeded || pendingPlacements > 1)
+            {
+                winner = scanForWinner();
+            }
+            else if (pendingPlacements == 1)
+            {
+                winner = checkLinesThrough(lastColumn, lastRow);
+            }
+            winnerKnown = true;
+            fullScanNeeded = false;
+            pendingPlacements = 0;
+        }
+        return winner;
+    }
+    /**
+     * Get the column of the most recently placed token.
+     * 
+     * Your agent may use this method.
+     * 
+     * @return the column of the last token placed, or -1 if no token has been placed.
+     */
+    public int getLastColumn()
+    {
+        return lastColumn;
+    }
+    /**
+     * Get the row of the most recently placed token.
+     * 
+     * Your agent may use this method.
+     * 
+     * @return the row of the last token placed, or -1 if no token has been placed.
+     */
+    public int getLastRow()
+    {
+        return lastRow;
     }
     /**
      * Validate that the given board is a valid next state following this board.
@@ -307,7 +666,7 @@ public class Connect4Game
      */
     public void highlightSlot(int row, int column)
     {
-        getColumn(column).getSlot(row).highlight();
+        setBit(highlightBits, bitIndex(column, row));
     }
     
     /**
@@ -332,5 +691,387 @@ public class Connect4Game
     public void setRedPlayedFirst(boolean redPlayedFirst)
     {
         this.redPlayedFirst = redPlayedFirst;
+        snapshotStale = true;
+    }
+    
+    /**
+     * Checks if the slot at the given column and row is filled. Row 0 is the top of the board.
+     * 
+     * Your agent will not need to use this method; use Connect4Slot.getIsFilled() instead.
+     * 
+     * @param column the column of the slot.
+     * @param row the row of the slot.
+     * @return true if the slot is filled, false if not.
+     */
+    boolean isFilled(int column, int row)
+    {
+        int bit = bitIndex(column, row);
+        return testBit(redBits, bit) || testBit(yellowBits, bit);
+    }
+    
+    /**
+     * Checks if the slot at the given column and row holds a red token.
+     * 
+     * Your agent will not need to use this method; use Connect4Slot.getIsRed() instead.
+     * 
+     * @param column the column of the slot.
+     * @param row the row of the slot.
+     * @return true if the slot holds a red token, false otherwise.
+     */
+    boolean isRed(int column, int row)
+    {
+        return testBit(redBits, bitIndex(column, row));
+    }
+    
+    /**
+     * Checks if the slot at the given column and row is highlighted.
+     * 
+     * Your agent will not need to use this method; use Connect4Slot.getIsHighlighted() instead.
+     * 
+     * @param column the column of the slot.
+     * @param row the row of the slot.
+     * @return true if the slot is highlighted, false if not.
+     */
+    boolean isHighlighted(int column, int row)
+    {
+        return testBit(highlightBits, bitIndex(column, row));
+    }
+    
+    /**
+     * Places a token into the slot at the given column and row if that slot is empty.
+     * 
+     * Your agent will not need to use this method; use Connect4Slot.addRed() or
+     * Connect4Slot.addYellow() instead.
+     * 
+     * @param column the column of the slot.
+     * @param row the row of the slot.
+     * @param red true to place a red token, false to place a yellow token.
+     */
+    void placeToken(int column, int row, boolean red)
+    {
+        if (isFilled(column, row))
+        {
+            return;
+        }
+        if (moveCount == moveSlots.length)
+        {
+            moveSlots = Arrays.copyOf(moveSlots, moveCount * 2);
+            moveWinStates = Arrays.copyOf(moveWinStates, moveCount * 2);
+        }
+        moveSlots[moveCount] = column * rowCount + row;
+        moveWinStates[moveCount] = packWinState();
+        moveCount++;
+        setBit(red ? redBits : yellowBits, bitIndex(column, row));
+        toggleHash(column, row, red);
+        columnsChanged[column] = true;
+        snapshotStale = true;
+        tokenCounts[column]++;
+        if (red)
+        {
+            redCount++;
+        }
+        else
+        {
+            yellowCount++;
+        }
+        int height = heights[column];
+        while (height < rowCount && isFilled(column, rowCount - 1 - height))
+        {
+            height++;
+        }
+        heights[column] = height;
+        lastColumn = column;
+        lastRow = row;
+        if (!winnerKnown || winner == 'N')  // a win already on the board cannot be undone by a new token
+        {
+            winnerKnown = false;
+            pendingPlacements++;
+        }
+    }
+    
+    /**
+     * Empties the slot at the given column and row and removes its highlight.
+     * 
+     * Your agent will not need to use this method; use undo() to take back a move.
+     * 
+     * @param column the column of the slot.
+     * @param row the row of the slot.
+     */
+    void clearSlot(int column, int row)
+    {
+        int bit = bitIndex(column, row);
+        if (testBit(redBits, bit) || testBit(yellowBits, bit))
+        {
+            // the token may be anywhere in the move history, so drop it from there and make
+            // every saved win state fall back to a full scan
+            int slot = column * rowCount + row;
+            int kept = 0;
+            for (int i = 0; i < moveCount; i++)
+            {
+                if (moveSlots[i] != slot)
+                {
+                    moveSlots[kept] = moveSlots[i];
+                    moveWinStates[kept] = moveWinStates[i] | FULL_SCAN_STATE;
+                    kept++;
+                }
+            }
+            moveCount = kept;
+            winnerKnown = false;
+            fullScanNeeded = true;
+        }
+        removeToken(column, row);
+    }
+    
+    /**
+     * Removes the token and highlight from a slot and lowers the column height if needed.
+     * 
+     * @param column the column of the slot.
+     * @param row the row of the slot.
+     */
+    private void removeToken(int column, int row)
+    {
+        int bit = bitIndex(column, row);
+        if (testBit(redBits, bit) || testBit(yellowBits, bit))
+        {
+            boolean red = testBit(redBits, bit);
+            toggleHash(column, row, red);
+            columnsChanged[column] = true;
+            snapshotStale = true;
+            tokenCounts[column]--;
+            if (red)
+            {
+                redCount--;
+            }
+            else
+            {
+                yellowCount--;
+            }
+        }
+        clearBit(redBits, bit);
+        clearBit(yellowBits, bit);
+        clearBit(highlightBits, bit);
+        int fromBottom = rowCount - 1 - row;
+        if (fromBottom < heights[column])
+        {
+            heights[column] = fromBottom;
+        }
+    }
+    
+    /**
+     * Adds or removes one token from the position hashes.
+     * 
+     * @param column the column of the token.
+     * @param row the row of the token.
+     * @param red whether the token is red.
+     */
+    private void toggleHash(int column, int row, boolean red)
+    {
+        long key = zobristKey(column * rowCount + row, red);
+        hash ^= key;
+        columnHashes[column] ^= key;
+        mirrorHash ^= zobristKey((columnCount - 1 - column) * rowCount + row, red);
+    }
+    
+    /**
+     * Computes the Zobrist key of a token. The keys are derived from the slot and color with a
+     * SplitMix64 finalizer instead of a random table, so they are the same for every game of
+     * the same size and need no memory even on very large boards.
+     * 
+     * @param slot the slot of the token, as column * rowCount + row.
+     * @param red whether the token is red.
+     * @return the 64-bit key of the token.
+     */
+    static long zobristKey(int slot, boolean red)
+    {
+        long z = (2L * slot + (red ? 1 : 2)) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+    
+    /**
+     * Packs the cached winner state into an int so it can be restored by undo().
+     * 
+     * @return the packed winner state.
+     */
+    private int packWinState()
+    {
+        int state = winner == 'R' ? 1 : winner == 'Y' ? 2 : 0;
+        if (winnerKnown)
+        {
+            state |= KNOWN_STATE;
+        }
+        if (fullScanNeeded)
+        {
+            state |= FULL_SCAN_STATE;
+        }
+        return state | (Math.min(pendingPlacements, 2) << 4);
+    }
+    
+    /**
+     * Restores a winner state packed by packWinState().
+     * 
+     * @param state the packed winner state.
+     */
+    private void restoreWinState(int state)
+    {
+        int code = state & 3;
+        winner = code == 1 ? 'R' : code == 2 ? 'Y' : 'N';
+        winnerKnown = (state & KNOWN_STATE) != 0;
+        fullScanNeeded = (state & FULL_SCAN_STATE) != 0;
+        pendingPlacements = state >>> 4;
+    }
+    
+    /**
+     * Scans the whole board for a line of tokens of one color, remembering the first one found.
+     * 
+     * @return 'R' if red has a line, 'Y' if yellow has a line, 'N' otherwise.
+     */
+    private char scanForWinner()
+    {
+        for (int i = 0; i < columnCount; i++)
+        {
+            int seen = 0;   // stop once every token in the column has been checked
+            for (int j = rowCount - 1; j >= 0 && seen < tokenCounts[i]; j--)
+            {
+                if (isFilled(i, j))
+                {
+                    seen++;
+                    char found = checkLinesThrough(i, j);
+                    if (found != 'N')
+                    {
+                        return found;
+                    }
+                }
+            }
+        }
+        return 'N';
+    }
+    /**
+     * Checks the four lines through one slot for enough tokens of that slot's color in a row,
+     * remembering the line if one is found.
+     * 
+     * @param column the column of the slot.
+     * @param row the row of the slot.
+     * @return 'R' if the slot completes a red line, 'Y' if it completes a yellow line, 'N' otherwise.
+     */
+    private char checkLinesThrough(int column, int row)
+    {
+        int bit = bitIndex(column, row);
+        long[][] bits;
+        char color;
+        if (testBit(redBits, bit))
+        {
+            bits = redBits;
+            color = 'R';
+        }
+        else if (testBit(yellowBits, bit))
+        {
+            bits = yellowBits;
+            color = 'Y';
+        }
+        else
+        {
+            return 'N';
+        }
+        for (int[] direction : DIRECTIONS)
+        {
+            int back = countRun(bits, column, row, -direction[0], -direction[1]);
+            int forward = countRun(bits, column, row, direction[0], direction[1]);
+            if (back + 1 + forward >= winLength)
+            {
+                winColumn = column - back * direction[0];
+                winRow = row - back * direction[1];
+                winColumnStep = direction[0];
+                winRowStep = direction[1];
+                winLineLength = back + 1 + forward;
+                return color;
+            }
+        }
+        return 'N';
+    }
+    /**
+     * Counts the tokens in the given mask next to a slot, stepping away from it in one direction.
+     * 
+     * @param bits the token mask of one color.
+     * @param column the column of the starting slot.
+     * @param row the row of the starting slot.
+     * @param columnStep the column change per step.
+     * @param rowStep the row change per step.
+     * @return the number of consecutive tokens found, not counting the starting slot.
+     */
+    private int countRun(long[][] bits, int column, int row, int columnStep, int rowStep)
+    {
+        int count = 0;
+        int i = column + columnStep;
+        int j = row + rowStep;
+        while (i >= 0 && i < columnCount && j >= 0 && j < rowCount && testBit(bits, bitIndex(i, j)))
+        {
+            count++;
+            i += columnStep;
+            j += rowStep;
+        }
+        return count;
+    }
+    
+    /**
+     * Converts a column and row (row 0 at the top) into a bit index in the board masks.
+     * 
+     * @param column the column of the slot.
+     * @param row the row of the slot.
+     * @return the index of the slot's bit.
+     */
+    private int bitIndex(int column, int row)
+    {
+        return column * columnStride + (rowCount - 1 - row);
+    }
+    
+    private static boolean testBit(long[][] bits, int index)
+    {
+        long[] chunk = bits[index >>> (6 + CHUNK_SHIFT)];
+        return chunk != null && (chunk[(index >>> 6) & ((1 << CHUNK_SHIFT) - 1)] & (1L << index)) != 0;
+    }
+    
+    private void setBit(long[][] bits, int index)
+    {
+        int chunk = index >>> (6 + CHUNK_SHIFT);
+        if (bits[chunk] == null)
+        {
+            bits[chunk] = new long[chunkLength];
+        }
+        bits[chunk][(index >>> 6) & ((1 << CHUNK_SHIFT) - 1)] |= 1L << index;
+    }
+    
+    private static void clearBit(long[][] bits, int index)
+    {
+        long[] chunk = bits[index >>> (6 + CHUNK_SHIFT)];
+        if (chunk != null)
+        {
+            chunk[(index >>> 6) & ((1 << CHUNK_SHIFT) - 1)] &= ~(1L << index);
+        }
+    }
+    
+    private static void clearMask(long[][] bits)
+    {
+        for (long[] chunk : bits)
+        {
+            if (chunk != null)
+            {
+                Arrays.fill(chunk, 0L);
+            }
+        }
+    }
+    
+    private static long[][] copyMask(long[][] bits)
+    {
+        long[][] copy = new long[bits.length][];
+        for (int i = 0; i < bits.length; i++)
+        {
+            if (bits[i] != null)
+            {
+                copy[i] = bits[i].clone();
+            }
+        }
+        return copy;
     }
 }
@@ -2,13 +2,16 @@
  * A single slot in a Connect 4 board. A slot can be either empty or filled, and it can
  * be filled with either a red token or a yellow token.
  * 
+ * The slot is a view onto the board stored by its Connect4Game; reading or changing the
+ * slot reads or changes that board.
+ * 
  * You should not modify this class, but you will need to use methods within it.
  */
 public class Connect4Slot
 {
-    private boolean isFilled;
-    private boolean isRed;
-    private boolean isHighlighted;
+    private final Connect4Game game;    // the game whose board this slot views
+    private final int column;   // the column of this slot within the game
+    private final int row;  // the row of this slot within the game
     
     /**
      * Creates a new Connect4Slot, initially unfilled.
@@ -17,8 +20,7 @@ public class Connect4Slot
      */
     public Connect4Slot()
     {
-        this.isFilled = false;
-        this.isRed = false;
+        this(new Connect4Game(1, 1), 0, 0);
     }
     /**
      * Copies the given slot.
@@ -29,8 +31,26 @@ public class Connect4Slot
      */
     public Connect4Slot(Connect4Slot slot)
     {
-        this.isFilled = slot.getIsFilled();
-        this.isRed = slot.getIsRed();
+        this();
+        if (slot.getIsFilled())
+        {
+            game.placeToken(column, row, slot.getIsRed());
+        }
+    }
+    /**
+     * Creates a view of one slot of a game's board.
+     * 
+     * Your agent will not need to use this method.
+     * 
+     * @param game the game whose board is viewed.
+     * @param column the column of the slot.
+     * @param row the row of the slot.
+     */
+    Connect4Slot(Connect4Game game, int column, int row)
+    {
+        this.game = game;
+        this.column = column;
+        this.row = row;
     }
     /**
      * Checks if the slot is currently filled.
@@ -41,7 +61,7 @@ public class Connect4Slot
      */
     public boolean getIsFilled()
     {
-        return isFilled;
+        return game.isFilled(column, row);
     }
     /**
      * If the slot is filled, checks if the token in the slot is red.
@@ -55,7 +75,7 @@ public class Connect4Slot
      */
     public boolean getIsRed()
     {
-        return isRed;
+        return game.isRed(column, row);
     }
      /**
      * Checks if the token in the slot matches the player's color. 
@@ -70,11 +90,11 @@ public class Connect4Slot
     {
         if (iAmRed)
         {            
-            return isRed;
+            return getIsRed();
         }
         else
         {
-            return !isRed;
+            return !getIsRed();
         }
     }
     /**
@@ -84,11 +104,7 @@ public class Connect4Slot
      */
     public void addRed()
     {
-        if (!isFilled)
-        {
-            this.isFilled = true;
-            this.isRed = true;
-        }
+        game.placeToken(column, row, true);
     }
     /**
      * If the slot is currently empty, adds a yellow token to it.
@@ -97,11 +113,7 @@ public class Connect4Slot
      */
     public void addYellow()
     {
-        if (!isFilled)
-        {
-            this.isFilled = true;
-            this.isRed = false;
-        }
+        game.placeToken(column, row, false);
     }
     
     /**
@@ -113,7 +125,7 @@ public class Connect4Slot
      */
     public boolean getIsHighlighted()
     {
-        return isHighlighted;
+        return game.isHighlighted(column, row);
     }
     /**
      * Highlights the slot.
@@ -122,7 +134,7 @@ public class Connect4Slot
      */
     public void highlight()
     {
-        this.isHighlighted = true;
+        game.highlightSlot(row, column);
     }
     /**
      * Clears the slot.
@@ -131,8 +143,6 @@ public class Connect4Slot
      */
     public void clear()
     {
-        this.isFilled = false;
-        this.isRed = false;
-        this.isHighlighted = false;
+        game.clearSlot(column, row);
     }
 }
@@ -0,0 +1,278 @@
+/**
+ * An unchangeable copy of a Connect 4 board at one point in a game.
+ * 
+ * Snapshots are taken with Connect4Game.snapshot(). Successive snapshots of the same game
+ * share every column that did not change between them, so taking one snapshot per move only
+ * copies the column that was played in. This makes it cheap to keep the whole history of a
+ * game for replaying, undoing or validating moves.
+ * 
+ * Your agent will not need to use this class.
+ */
+public final class Connect4Snapshot
+{
+    private final int rowCount; // the number of rows in the board
+    private final int winLength;    // the number of tokens in a row needed to win
+    private final boolean redPlayedFirst;   // whether red played first in the game
+    private final int moveCount;    // the number of tokens placed in the game so far
+    private final long hash;    // the Zobrist hash of the board
+    private final long[][] columns; // per column: red bits then yellow bits, bit k is the kth slot from the bottom
+    private final int[] heights;    // the number of filled slots stacked from the bottom of each column
+    
+    /**
+     * Creates a snapshot of a game, reusing the columns of an earlier snapshot that have not
+     * changed since.
+     * 
+     * Your agent will not need to use this method; use Connect4Game.snapshot() instead.
+     * 
+     * @param game the game to record.
+     * @param previous an earlier snapshot of the same game, or null.
+     * @param changed which columns have changed since the earlier snapshot.
+     */
+    Connect4Snapshot(Connect4Game game, Connect4Snapshot previous, boolean[] changed)
+    {
+        this.rowCount = game.getRowCount();
+        this.winLength = game.getWinLength();
+        this.redPlayedFirst = game.getRedPlayedFirst();
+        this.moveCount = game.getMoveCount();
+        this.hash = game.getHash();
+        int columnCount = game.getColumnCount();
+        columns = new long[columnCount][];
+        heights = new int[columnCount];
+        int words = (rowCount + 63) / 64;
+        for (int i = 0; i < columnCount; i++)
+        {
+            heights[i] = game.getColumnHeight(i);
+            if (previous != null && !changed[i])
+            {
+                columns[i] = previous.columns[i];
+            }
+            else
+            {
+                long[] column = new long[2 * words];
+                for (int k = 0; k < rowCount; k++)
+                {
+                    int row = rowCount - 1 - k;
+                    if (game.isFilled(i, row))
+                    {
+                        column[(game.isRed(i, row) ? 0 : words) + k / 64] |= 1L << k;
+                    }
+                }
+                columns[i] = column;
+            }
+        }
+    }
+    
+    /**
+     * Get the total number of columns in the board.
+     * 
+     * @return the number of columns.
+     */
+    public int getColumnCount()
+    {
+        return columns.length;
+    }
+    
+    /**
+     * Get the total number of rows in the board.
+     * 
+     * @return the number of rows.
+     */
+    public int getRowCount()
+    {
+        return rowCount;
+    }
+    
+    /**
+     * Get the number of tokens in a row needed to win the game.
+     * 
+     * @return the win length of the game.
+     */
+    public int getWinLength()
+    {
+        return winLength;
+    }
+    
+    /**
+     * Check whether red played first in the game.
+     * 
+     * @return true if red played first, false otherwise.
+     */
+    public boolean getRedPlayedFirst()
+    {
+        return redPlayedFirst;
+    }
+    
+    /**
+     * Get the number of tokens that had been placed when the snapshot was taken.
+     * 
+     * @return the number of moves played.
+     */
+    public int getMoveCount()
+    {
+        return moveCount;
+    }
+    
+    /**
+     * Get the Zobrist hash of the board, as returned by Connect4Game.getHash().
+     * 
+     * @return the hash of the board.
+     */
+    public long getHash()
+    {
+        return hash;
+    }
+    
+    /**
+     * Get the number of tokens stacked from the bottom of a column.
+     * 
+     * @param column the column to check.
+     * @return the number of filled slots in the column, counted upwards from the bottom.
+     */
+    public int getColumnHeight(int column)
+    {
+        return heights[column];
+    }
+    
+    /**
+     * Checks if a slot was filled. Row 0 is the top of the board.
+     * 
+     * @param column the column of the slot.
+     * @param row the row of the slot.
+     * @return true if the slot was filled, false if not.
+     */
+    public boolean isFilled(int column, int row)
+    {
+        return isRed(column, row) || testBit(columns[column], columns[column].length / 2, rowCount - 1 - row);
+    }
+    
+    /**
+     * Checks if a slot held a red token. Row 0 is the top of the board.
+     * 
+     * @param column the column of the slot.
+     * @param row the row of the slot.
+     * @return true if the slot held a red token, false otherwise.
+     */
+    public boolean isRed(int column, int row)
+    {
+        return testBit(columns[column], 0, rowCount - 1 - row);
+    }
+    
+    /**
+     * Checks if this snapshot and another one hold the very same data for a column, which is
+     * the case when the column did not change between them.
+     * 
+     * @param other the other snapshot.
+     * @param column the column to compare.
+     * @return true if the column is shared, false otherwise.
+     */
+    public boolean sharesColumn(Connect4Snapshot other, int column)
+    {
+        return columns[column] == other.columns[column];
+    }
+    
+    /**
+     * Creates a new game holding the board of this snapshot.
+     * 
+     * The new game's move history lists the tokens column by column rather than in the order
+     * they were played.
+     * 
+     * @return a new game with the same board.
+     */
+    public Connect4Game toGame()
+    {
+        Connect4Game game = new Connect4Game(columns.length, rowCount, winLength);
+        game.setRedPlayedFirst(redPlayedFirst);
+        for (int i = 0; i < columns.length; i++)
+        {
+            for (int j = rowCount - 1; j >= 0; j--)
+            {
+                if (isFilled(i, j))
+                {
+                    game.placeToken(i, j, isRed(i, j));
+                }
+            }
+        }
+        return game;
+    }
+    
+    /**
+     * Validate that the given game is a valid next state following this snapshot. This reports
+     * exactly what Connect4Game.validate(...) would, but only looks slot by slot at the columns
+     * that changed.
+     * 
+     * @param after the game after the move.
+     * @return an error message if the move was invalid, or an empty string if it was valid.
+     */
+    public String validate(Connect4Game after)
+    {
+        Connect4Snapshot current = after.snapshot();
+        int filledSlots = 0;
+        for (int i = 0; i < columns.length; i++)
+        {
+            if (current.columns[i] == columns[i])
+            {
+                if (after.getTokenCount(i) != after.getColumnHeight(i))
+                {
+                    return "Invalid move: a token in column " + i + " was not placed in the highest open slot.";
+                }
+                continue;
+            }
+            for (int j = 0; j < rowCount; j++)
+            {
+                if (!isFilled(i, j) && current.isFilled(i, j))
+                {
+                    filledSlots++;
+                }
+                if (isFilled(i, j) && !current.isFilled(i, j))
+                {
+                    return "Invalid move: a token was removed at column " + i + ", row " + j + ".";
+                }
+                if (isFilled(i, j) && isRed(i, j) != current.isRed(i, j))
+                {
+                    return "Invalid move: a token was changed at column " + i + ", row " + j + ".";
+                }
+                if (j < rowCount - 1 && current.isFilled(i, j) && !current.isFilled(i, j + 1))
+                {
+                    return "Invalid move: a token in column " + i + " was not placed in the highest open slot.";
+                }
+            }
+        }
+        if (filledSlots > 1)
+        {
+            return "Invalid move: more than one token was placed.";
+        }
+        if (filledSlots == 0)
+        {
+            return "Invalid move: no move was made.";
+        }
+        int redSlots = after.getRedCount(), yellowSlots = after.getYellowCount();
+        if (after.getRedPlayedFirst())
+        {
+            if (redSlots < yellowSlots)
+            {
+                return "Invalid move: yellow moved during red's turn.";
+            }
+            else if (redSlots > yellowSlots + 1)
+            {
+                return "Invalid move: red moved during yellow's turn.";
+            }
+        }
+        else
+        {
+            if (yellowSlots < redSlots)
+            {
+                return "Invalid move: red moved during yellow's turn.";
+            }
+            else if (yellowSlots > redSlots + 1)
+            {
+                return "Invalid move: yellow moved during red's turn.";
+            }
+        }
+        return "";
+    }
+    
+    private static boolean testBit(long[] column, int offset, int index)
+    {
+        return (column[offset + index / 64] & (1L << index)) != 0;
+    }
+}
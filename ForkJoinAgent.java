@@ -0,0 +1,338 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.logging.Logger;
+
+/**
+ * An agent that splits its alpha-beta search across threads with a ForkJoinPool.
+ * 
+ * The search follows the "young brothers wait" rule: at each node the first move is searched
+ * on its own, since it is the most likely to cause a cutoff, and only then are the remaining
+ * moves forked as parallel tasks. When one of them scores high enough for a cutoff, the
+ * siblings still running are told to stop. Near the leaves, where tasks would be too small
+ * to be worth forking, the search falls back to a serial AlphaBetaSearch, and those share a
+ * TranspositionTable.
+ * 
+ * The agent searches a fixed number of plies. If asked, it also runs the serial search on
+ * each position and logs how much faster the parallel search was.
+ */
+public class ForkJoinAgent extends Agent
+{
+    private static final Logger LOG = Logger.getLogger(ForkJoinAgent.class.getName());
+    private static final int DEFAULT_DEPTH = 12;
+    private static final int SERIAL_DEPTH = 6;  // subtrees at most this deep are searched without forking
+    private static final int INFINITY = AlphaBetaSearch.WIN_SCORE + 1;  // larger than any real score
+    private static final Map<Integer, ForkJoinPool> pools = new HashMap<>();  // the pools of all agents, by parallelism, created on first use
+    
+    private int depth;  // the number of plies to search
+    private ForkJoinPool pool;  // the threads that run the search, shared with the other agents of the same parallelism
+    private TranspositionTable table;   // the cache shared by the serial parts of the search
+    private boolean reportSpeedup;  // whether to time the serial search on every move as well
+    private TranspositionTable timingTable; // the agent's own table for the timed searches, created on first use
+    private long serialNanos, parallelNanos;    // the total search times of the moves compared so far
+    
+    /**
+     * Constructs a new agent that uses every available core.
+     * 
+     * @param game The game the agent will be playing.
+     * @param iAmRed True if the agent is Red, False if the agent is Yellow.
+     */
+    public ForkJoinAgent(Connect4Game game, boolean iAmRed)
+    {
+        this(game, iAmRed, DEFAULT_DEPTH, Runtime.getRuntime().availableProcessors(),
+            TranspositionTable.getShared());
+    }
+    
+    /**
+     * Constructs a new agent with the given depth, number of threads and table.
+     * 
+     * @param game The game the agent will be playing.
+     * @param iAmRed True if the agent is Red, False if the agent is Yellow.
+     * @param depth The number of plies to search.
+     * @param parallelism The number of threads to search with.
+     * @param table The table caching search results; it may be shared with other agents.
+     */
+    public ForkJoinAgent(Connect4Game game, boolean iAmRed, int depth, int parallelism, TranspositionTable table)
+    {
+        super(game, iAmRed);
+        this.depth = depth;
+        this.pool = getPool(Math.max(1, parallelism));
+        this.table = table;
+    }
+    
+    /**
+     * Returns the pool with the given parallelism, creating it on first use. Agents share their
+     * pools, so creating agents game after game never leaves idle threads behind.
+     * 
+     * @param parallelism the number of threads of the pool.
+     * @return the shared pool.
+     */
+    private static synchronized ForkJoinPool getPool(int parallelism)
+    {
+        ForkJoinPool pool = pools.get(parallelism);
+        if (pool == null)
+        {
+            pool = new ForkJoinPool(parallelism);
+            pools.put(parallelism, pool);
+        }
+        return pool;
+    }
+    
+    /**
+     * Sets whether every move should also be searched serially and the speedup logged. This
+     * makes each move take about twice as long.
+     * 
+     * @param reportSpeedup true to compare with the serial search, false not to.
+     */
+    public void setReportSpeedup(boolean reportSpeedup)
+    {
+        this.reportSpeedup = reportSpeedup;
+    }
+    
+    /**
+     * Searches the current position in parallel and drops a token into the best column found.
+     */
+    public void move()
+    {
+        if (reportSpeedup)
+        {
+            // both searches start from an empty table of their own, so neither benefits from
+            // the other and the table shared with other agents is left alone
+            if (timingTable == null)
+            {
+                timingTable = new TranspositionTable((int) Math.max(1, table.getCapacity() * 16L >> 20));
+            }
+            timingTable.clear();
+            long start = System.nanoTime();
+            AlphaBetaSearch serial = new AlphaBetaSearch(myGame, iAmRed);
+            serial.setTranspositionTable(timingTable);
+            serial.search(depth);
+            long serialTime = System.nanoTime() - start;
+            timingTable.clear();
+            start = System.nanoTime();
+            int column = searchInParallel(timingTable);
+            long parallelTime = System.nanoTime() - start;
+            serialNanos += serialTime;
+            parallelNanos += parallelTime;
+            LOG.info(String.format("depth %d: serial %.1f ms, parallel %.1f ms on %d threads, speedup %.2f",
+                depth, serialTime / 1e6, parallelTime / 1e6, pool.getParallelism(),
+                serialTime / (double) Math.max(1, parallelTime)));
+            myGame.getColumn(column).drop(iAmRed);
+            return;
+        }
+        myGame.getColumn(searchInParallel(table)).drop(iAmRed);
+    }
+    
+    /**
+     * Get how many times faster the parallel search was than the serial search, over all the
+     * moves compared so far.
+     * 
+     * @return the speedup, or 0 if no moves have been compared.
+     */
+    public double getSpeedup()
+    {
+        if (parallelNanos == 0)
+        {
+            return 0;
+        }
+        return serialNanos / (double) parallelNanos;
+    }
+    
+    /**
+     * Runs the parallel search on the current position.
+     * 
+     * @param table the table for the serial parts of the search.
+     * @return the best column found.
+     */
+    private int searchInParallel(TranspositionTable table)
+    {
+        SearchTask root = new SearchTask(null, table, new Connect4Game(myGame), depth, 0, -INFINITY, INFINITY);
+        if (root.board.isRedTurn() != iAmRed)
+        {
+            root.board.setRedPlayedFirst(!root.board.getRedPlayedFirst());
+        }
+        pool.invoke(root);
+        return root.bestMove;
+    }
+    
+    /**
+     * Returns the name of this agent.
+     * 
+     * @return the agent's name
+     */
+    public String getName()
+    {
+        return "Fork Join Agent";
+    }
+    
+    /**
+     * The search of one position, which forks a task for each move after the first.
+     */
+    private class SearchTask extends RecursiveTask<Integer>
+    {
+        private static final long serialVersionUID = 1L;
+    
+        private final SearchTask parent;    // the task that forked this one, or null at the root
+        private final TranspositionTable table; // the table of the serial searches, the same for the whole tree
+        private final Connect4Game board;   // this task's own copy of the position
+        private final int depth, ply, beta; // the search depth, distance from the root and upper bound
+        private int alpha;  // the score the player to move is already guaranteed
+        private int bestMove = -1;  // the column of the best move found
+        private volatile boolean aborted;   // set when a sibling caused a cutoff
+        private volatile AlphaBetaSearch serial;    // the serial search of this subtree, if one is running
+        private volatile SearchTask eldest;  // the task searching the first move, on this thread
+        private volatile SearchTask[] children; // the tasks forked for the later moves
+    
+        SearchTask(SearchTask parent, TranspositionTable table, Connect4Game board, int depth, int ply, int alpha, int beta)
+        {
+            this.parent = parent;
+            this.table = table;
+            this.board = board;
+            this.depth = depth;
+            this.ply = ply;
+            this.alpha = alpha;
+            this.beta = beta;
+        }
+    
+        protected Integer compute()
+        {
+            if (isAborted())
+            {
+                return 0;
+            }
+            int[] moves = new int[board.getColumnCount()];
+            int moveCount = 0;
+            int center = (board.getColumnCount() - 1) / 2;
+            for (int i = 0; i < moves.length; i++)
+            {
+                int column = i % 2 == 0 ? center - i / 2 : center + (i + 1) / 2;
+                if (board.getColumn(column).getIsFull())
+                {
+                    continue;
+                }
+                if (board.isWinningMove(column))
+                {
+                    bestMove = column;
+                    return AlphaBetaSearch.WIN_SCORE - ply - 1;
+                }
+                moves[moveCount++] = column;
+            }
+            if (moveCount == 0 || depth <= 0)
+            {
+                bestMove = moveCount > 0 ? moves[0] : -1;
+                return 0;
+            }
+            if (depth <= SERIAL_DEPTH && parent != null)
+            {
+                return searchSerially();
+            }
+            // the eldest brother is searched first, on this thread
+            bestMove = moves[0];
+            board.play(moves[0]);
+            SearchTask first = new SearchTask(this, table, new Connect4Game(board), depth - 1, ply + 1, -beta, -alpha);
+            eldest = first; // published before searching so that abort() reaches it too
+            int best = -first.compute();
+            board.undo();
+            if (isAborted())
+            {
+                return 0;   // a sibling cut off while the eldest brother was searched
+            }
+            alpha = Math.max(alpha, best);
+            if (alpha >= beta || moveCount == 1)
+            {
+                return best;
+            }
+            // the younger brothers are searched in parallel with the window known by now
+            SearchTask[] forked = new SearchTask[moveCount - 1];
+            for (int i = 1; i < moveCount; i++)
+            {
+                Connect4Game child = new Connect4Game(board);
+                child.play(moves[i]);
+                forked[i - 1] = new SearchTask(this, table, child, depth - 1, ply + 1, -beta, -alpha);
+            }
+            children = forked;  // published before forking so that abort() always reaches them
+            for (SearchTask child : forked)
+            {
+                child.fork();
+            }
+            for (int i = 1; i < moveCount; i++)
+            {
+                int score = -forked[i - 1].join();
+                if (alpha >= beta || isAborted())
+                {
+                    continue;   // the remaining results are not needed; the tasks only have to finish
+                }
+                if (score > best)
+                {
+                    best = score;
+                    bestMove = moves[i];
+                }
+                if (score > alpha)
+                {
+                    alpha = score;
+                    if (alpha >= beta)
+                    {
+                        abortChildren();
+                    }
+                }
+            }
+            return best;
+        }
+    
+        private int searchSerially()
+        {
+            AlphaBetaSearch search = new AlphaBetaSearch(board, board.isRedTurn());
+            search.setTranspositionTable(table);
+            serial = search;
+            if (isAborted())
+            {
+                return 0;   // a sibling cut off while the search was being set up
+            }
+            return search.evaluate(depth, ply, alpha, beta);
+        }
+    
+        private boolean isAborted()
+        {
+            for (SearchTask task = this; task != null; task = task.parent)
+            {
+                if (task.aborted)
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    
+        private void abortChildren()
+        {
+            for (SearchTask child : children)
+            {
+                child.abort();
+            }
+        }
+    
+        private void abort()
+        {
+            aborted = true;
+            AlphaBetaSearch search = serial;
+            if (search != null)
+            {
+                search.stop(true);
+            }
+            SearchTask first = eldest;
+            if (first != null)
+            {
+                first.abort();
+            }
+            SearchTask[] forked = children;
+            if (forked != null)
+            {
+                for (SearchTask child : forked)
+                {
+                    child.abort();
+                }
+            }
+        }
+    }
+}
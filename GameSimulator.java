@@ -1,4 +1,5 @@
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Random;
 import java.util.logging.Level;
@@ -16,10 +17,13 @@ public class GameSimulator {
 
 
     private static final int SIM_ITERATIONS = 1000;
+    private static final long MOVE_BUDGET = 100; // milliseconds per move, for agents that use a time budget
 
     private enum Outcome { RED_WINS, YELLOW_WINS, DRAW_GAME, GAME_ERRORED };
 
     private static Map<String, Integer> errors = new HashMap<>();
+    private static long redSlowestMove, yellowSlowestMove; // nanoseconds
+    private static Map<String, long[]> redCounters = new LinkedHashMap<>(), yellowCounters = new LinkedHashMap<>(); // per agent counter: its sum and the number of games reporting it
 
 
     private static Outcome playGame(Connect4Game game, Agent redAgent,
@@ -33,13 +37,18 @@ public class GameSimulator {
 
         game.setRedPlayedFirst(redPlayerturn);
 
+        Connect4Fingerprint oldBoard = new Connect4Fingerprint(game);
+
         while (gameActive) {
-            Connect4Game oldBoard = new Connect4Game(game);
+            oldBoard.record(game);
 
+            long moveStart = System.nanoTime();
             if (redPlayerturn) {
                 redAgent.move();
+                redSlowestMove = Math.max(redSlowestMove, System.nanoTime() - moveStart);
             } else {
                 yellowAgent.move();
+                yellowSlowestMove = Math.max(yellowSlowestMove, System.nanoTime() - moveStart);
             }
             redPlayerturn = !redPlayerturn;
 
@@ -52,15 +61,21 @@ public class GameSimulator {
                 GameSimulator.errors.put(validateResult, ++numErrors);
 
                 gameActive = false;
+            } else {
+                // tell the player whose turn it is now what their opponent just played
+                (redPlayerturn ? redAgent : yellowAgent).opponentMoved(game.getLastColumn());
             }
 
-            if (game.gameWon() != 'N' || game.boardFull()) {
+            if (game.getWinner() != 'N' || game.boardFull()) {
                 // the game has been won or there's a draw
                 gameActive = false;
             }
         }
+        // however the game ended, let the agents stop any thinking of their own
+        redAgent.gameOver();
+        yellowAgent.gameOver();
 
-        switch (game.gameWon()) {
+        switch (game.getWinner()) {
             case 'R': { return Outcome.RED_WINS; }
             case 'Y': { return Outcome.YELLOW_WINS; }
             default: {
@@ -71,6 +86,16 @@ public class GameSimulator {
     }
 
 
+    private static void addCounters(Agent agent, Map<String, long[]> totals) {
+        // each counter is averaged over the games that reported it, so an agent can leave out a count that does not apply
+        agent.getCounters().forEach((name, count) -> {
+            long[] total = totals.computeIfAbsent(name, key -> new long[2]);
+            total[0] += count;
+            total[1]++;
+        });
+    }
+
+
     public static void main(String[] args) {
         int redWins = 0, yellowWins = 0, draws = 0, gameErrors = 0;
 
@@ -84,6 +109,8 @@ public class GameSimulator {
 
             Agent redAgent    = new MyAgent2(game, true); // set to your agent
             Agent yellowAgent = new BrilliantAgent(game, false);
+            redAgent.setMoveBudget(MOVE_BUDGET);
+            yellowAgent.setMoveBudget(MOVE_BUDGET);
 
             redName    = redAgent.getName();
             yellowName = yellowAgent.getName();
@@ -94,6 +121,8 @@ public class GameSimulator {
                 case DRAW_GAME:    { draws++;      } break;
                 case GAME_ERRORED: { gameErrors++; } break;
             }
+            addCounters(redAgent, redCounters);
+            addCounters(yellowAgent, yellowCounters);
         }
 
         StringBuilder sb = new StringBuilder();
@@ -104,6 +133,12 @@ public class GameSimulator {
         sb.append(String.format("  Yellow Wins:  %5d  %6.2f%%\n", yellowWins, yellowWins/(double)SIM_ITERATIONS*100));
         sb.append(String.format("  Draws:        %5d  %6.2f%%\n", draws,      draws     /(double)SIM_ITERATIONS*100));
         sb.append(String.format("  Errors:       %5d  %6.2f%%\n", gameErrors, gameErrors/(double)SIM_ITERATIONS*100));
+        sb.append(String.format("  Slowest move:  red %.1f ms, yellow %.1f ms (budget %d ms)\n",
+                redSlowestMove / 1e6, yellowSlowestMove / 1e6, MOVE_BUDGET));
+        redCounters.forEach((name, total) -> sb.append(String.format("  Red %s: %.2f on average over %d games\n",
+                name, total[0] / (double) total[1], total[1])));
+        yellowCounters.forEach((name, total) -> sb.append(String.format("  Yellow %s: %.2f on average over %d games\n",
+                name, total[0] / (double) total[1], total[1])));
         for (String key : GameSimulator.errors.keySet()) {
             int numErrors = GameSimulator.errors.get(key);
             sb.append(String.format("   %5dx: \"%s\"\n", numErrors, key));
@@ -0,0 +1,431 @@
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * An agent that searches one ply deeper at a time until its time budget runs out.
+ * 
+ * Each depth is a full negamax alpha-beta search. When the budget runs out in the middle of a
+ * depth, that depth is thrown away and the agent plays the best move of the last depth it
+ * completed, so every move takes about the same time whatever the board size. The results of
+ * each depth are kept in a TranspositionTable, which makes the next depth try the best moves
+ * first.
+ * 
+ * The agent stops early when it finds a forced win or loss, or when it has searched to the end
+ * of the game.
+ * 
+ * While the position is in an OpeningBook, the agent plays the book move without searching.
+ * 
+ * The agent can also be given a SolvedPositions database. Whenever a search proves the result
+ * of a position, the result is recorded there, and positions found in it are played without
+ * searching, so solving work carries over to later games and later runs.
+ * 
+ * With pondering switched on, the agent also searches while its opponent is moving, so it
+ * gets to think for about as long as both players together.
+ */
+public class IterativeDeepeningAgent extends Agent
+{
+    private static final long DEFAULT_MOVE_BUDGET = 100;    // milliseconds per move if no other budget is set
+    private static final long MAX_PONDER_MILLIS = 60000;    // the longest pondering runs, in case the game is abandoned
+    private static ExecutorService ponderThreads;   // the threads all agents ponder on, created on first use
+    
+    private TranspositionTable table;   // the cache of search results
+    private OpeningBook book = OpeningBook.getShared();   // the book consulted before searching, or null
+    private SolvedPositions solved; // the database of proven results, or null
+    private int lastDepth;  // the deepest search completed during the last move
+    private boolean pondering;  // whether to keep searching while the opponent moves
+    private AlphaBetaSearch moveSearch; // the search of the agent's own moves, kept from move to move so its arrays are reused
+    private AlphaBetaSearch ponderSearch;   // the search the ponder thread is running, or null
+    private Future<?> ponderResult; // the running pondering, or null
+    private long[] ponderHashes;    // per opponent reply: the hash of the position after it
+    private int[] ponderMoves, ponderScores, ponderDepths;  // per opponent reply: the best answer, its score and the depth searched, 0 if none
+    private int lastPonderedDepth;  // the depth pondering had reached for the position of the last move
+    
+    /**
+     * Constructs a new agent with a budget of 100 milliseconds per move.
+     * 
+     * @param game The game the agent will be playing.
+     * @param iAmRed True if the agent is Red, False if the agent is Yellow.
+     */
+    public IterativeDeepeningAgent(Connect4Game game, boolean iAmRed)
+    {
+        this(game, iAmRed, DEFAULT_MOVE_BUDGET, TranspositionTable.getShared());
+    }
+    
+    /**
+     * Constructs a new agent with the given time budget and transposition table.
+     * 
+     * @param game The game the agent will be playing.
+     * @param iAmRed True if the agent is Red, False if the agent is Yellow.
+     * @param moveBudget The time allowed per move in milliseconds.
+     * @param table The table caching search results; it may be shared with other agents.
+     */
+    public IterativeDeepeningAgent(Connect4Game game, boolean iAmRed, long moveBudget, TranspositionTable table)
+    {
+        super(game, iAmRed);
+        setMoveBudget(moveBudget);
+        this.table = table;
+    }
+    
+    /**
+     * Searches deeper and deeper until the time budget runs out, then drops a token into the
+     * best column of the last completed search.
+     */
+    public void move()
+    {
+        stopPondering();
+        myGame.getColumn(chooseMove()).drop(iAmRed);
+        startPondering();
+    }
+    
+    /**
+     * Stops pondering, since the position it was preparing for has now been reached or missed.
+     * 
+     * @param column the column the opponent dropped a token into.
+     */
+    public void opponentMoved(int column)
+    {
+        stopPondering();
+    }
+    
+    /**
+     * Stops pondering, since there will be no next move to prepare for.
+     */
+    public void gameOver()
+    {
+        stopPondering();
+    }
+    
+    /**
+     * Sets whether the agent keeps searching while its opponent moves. It then searches the
+     * position after every possible reply, one ply deeper at a time, and when its own turn
+     * comes it carries on from the result for the reply that was actually played, so it
+     * starts its move several plies deep already. Pondering is off by default.
+     * 
+     * @param pondering true to think on the opponent's time, false not to.
+     */
+    public void setPondering(boolean pondering)
+    {
+        this.pondering = pondering;
+        if (!pondering)
+        {
+            stopPondering();
+        }
+    }
+    
+    /**
+     * Get the depth to which the position of the last move had already been searched by
+     * pondering.
+     * 
+     * @return the number of plies searched ahead of time, or 0 if the position was not pondered.
+     */
+    public int getLastPonderedDepth()
+    {
+        return lastPonderedDepth;
+    }
+    
+    /**
+     * Chooses the move to play: a book move, a move from the solved positions database, or
+     * the best move of the deepest search completed within the time budget.
+     * 
+     * @return the column to play.
+     */
+    private int chooseMove()
+    {
+        lastPonderedDepth = 0;
+        int bookMove = book == null ? -1 : book.lookup(myGame);
+        if (bookMove != -1 && !myGame.getColumn(bookMove).getIsFull())
+        {
+            return bookMove;
+        }
+        long deadline = getMoveDeadline();
+        int solvedMove = solved == null ? -1 : findSolvedMove();
+        if (solvedMove != -1)
+        {
+            return solvedMove;
+        }
+        if (moveSearch == null)
+        {
+            moveSearch = new AlphaBetaSearch(myGame, iAmRed);
+        }
+        else
+        {
+            moveSearch.setPosition(myGame, iAmRed);
+            moveSearch.setDeadline(Long.MAX_VALUE);
+        }
+        moveSearch.setTranspositionTable(table);
+        int emptySlots = myGame.getColumnCount() * myGame.getRowCount() - myGame.getMoveCount();
+        int column, score;
+        int reply = myGame.getLastColumn();
+        if (ponderDepths != null && reply > -1 && reply < ponderDepths.length && ponderDepths[reply] > 0
+            && ponderHashes[reply] == myGame.getHash())
+        {
+            // carry on from where pondering the reply that was played left off
+            column = ponderMoves[reply];
+            score = ponderScores[reply];
+            lastDepth = ponderDepths[reply];
+            lastPonderedDepth = lastDepth;
+        }
+        else
+        {
+            column = moveSearch.search(1);  // always complete one ply so there is a move to play
+            score = moveSearch.getBestScore();
+            lastDepth = 1;
+        }
+        moveSearch.setDeadline(deadline);
+        for (int depth = lastDepth + 1; depth <= emptySlots && !AlphaBetaSearch.isDecided(score); depth++)
+        {
+            int best = moveSearch.search(depth);
+            if (moveSearch.wasStopped())
+            {
+                break;
+            }
+            column = best;
+            score = moveSearch.getBestScore();
+            lastDepth = depth;
+        }
+        if (solved != null && (lastDepth >= emptySlots || AlphaBetaSearch.isDecided(score)))
+        {
+            recordSolved(column, score);
+        }
+        return column;
+    }
+    
+    /**
+     * Starts pondering the position after the move just played, unless pondering is off or
+     * the game is over.
+     */
+    private void startPondering()
+    {
+        if (ponderDepths != null)
+        {
+            Arrays.fill(ponderDepths, 0);   // the results for the last position are no use any more
+        }
+        if (!pondering || myGame.getWinner() != 'N' || myGame.boardFull())
+        {
+            return;
+        }
+        Connect4Game board = new Connect4Game(myGame);
+        if (board.isRedTurn() == iAmRed)
+        {
+            board.setRedPlayedFirst(!board.getRedPlayedFirst());    // the opponent is to move
+        }
+        int columns = board.getColumnCount();
+        if (ponderDepths == null || ponderDepths.length != columns)
+        {
+            ponderHashes = new long[columns];
+            ponderMoves = new int[columns];
+            ponderScores = new int[columns];
+            ponderDepths = new int[columns];
+        }
+        AlphaBetaSearch search = new AlphaBetaSearch(board, !iAmRed);
+        search.setTranspositionTable(table);
+        search.setDeadline(System.nanoTime() + MAX_PONDER_MILLIS * 1000000L);
+        synchronized (IterativeDeepeningAgent.class)
+        {
+            if (ponderThreads == null)
+            {
+                ponderThreads = Executors.newCachedThreadPool(runnable -> {
+                    Thread thread = new Thread(runnable, "IterativeDeepeningAgent ponderer");
+                    thread.setDaemon(true);    // never keep the program running after the game
+                    return thread;
+                });
+            }
+        }
+        ponderSearch = search;
+        ponderResult = ponderThreads.submit(() -> ponder(board, search));
+    }
+    
+    /**
+     * Searches the position after every reply of the opponent, all replies to depth 1, then
+     * all to depth 2 and so on, until stopped or every reply is searched to the end of the
+     * game. Runs on a ponder thread; the results are only read after it has finished.
+     * 
+     * @param board the position with the opponent to move; it is changed and restored.
+     * @param search the search to use, which stopPondering() stops.
+     */
+    private void ponder(Connect4Game board, AlphaBetaSearch search)
+    {
+        int columns = board.getColumnCount();
+        int slots = columns * board.getRowCount();
+        int center = (columns - 1) / 2;
+        boolean searched = true;
+        for (int depth = 1; searched; depth++)
+        {
+            searched = false;
+            for (int i = 0; i < columns; i++)
+            {
+                // center first, then alternately one step right and one step left of it
+                int reply = i % 2 == 0 ? center - i / 2 : center + (i + 1) / 2;
+                if (board.getColumn(reply).getIsFull() || board.isWinningMove(reply))
+                {
+                    continue;   // after a winning reply there is nothing left to answer
+                }
+                board.play(reply);
+                int emptySlots = slots - board.getMoveCount();
+                if (depth <= emptySlots && !(ponderDepths[reply] > 0 && AlphaBetaSearch.isDecided(ponderScores[reply])))
+                {
+                    search.setPosition(board, iAmRed);
+                    int best = search.search(depth);
+                    if (search.wasStopped())
+                    {
+                        return;
+                    }
+                    ponderHashes[reply] = board.getHash();
+                    ponderMoves[reply] = best;
+                    ponderScores[reply] = search.getBestScore();
+                    ponderDepths[reply] = depth;
+                    searched = true;
+                }
+                board.undo();
+            }
+        }
+    }
+    
+    /**
+     * Stops pondering and waits for the ponder thread to finish, keeping what it found.
+     */
+    private void stopPondering()
+    {
+        if (ponderResult == null)
+        {
+            return;
+        }
+        ponderSearch.stop(true);
+        try
+        {
+            ponderResult.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e)
+        {
+            throw new IllegalStateException("pondering failed", e.getCause());
+        }
+        finally
+        {
+            ponderResult = null;
+            ponderSearch = null;
+        }
+    }
+    
+    /**
+     * Sets the database that proven results are recorded in and played from.
+     * 
+     * @param solved the database to use, for example SolvedPositions.getShared(game), or null
+     * to use none.
+     */
+    public void setSolvedPositions(SolvedPositions solved)
+    {
+        this.solved = solved;
+    }
+    
+    /**
+     * Get the deepest search completed during the last move.
+     * 
+     * @return the number of plies searched.
+     */
+    public int getLastDepth()
+    {
+        return lastDepth;
+    }
+    
+    /**
+     * Looks for a move that keeps the proven result of the current position, using only the
+     * database.
+     * 
+     * @return the column to play, or -1 if the position or none of its moves are in the database.
+     */
+    private int findSolvedMove()
+    {
+        Connect4Game board = new Connect4Game(myGame);
+        if (board.isRedTurn() != iAmRed)
+        {
+            board.setRedPlayedFirst(!board.getRedPlayedFirst());
+        }
+        int score = solved.lookup(board);
+        if (score == Integer.MIN_VALUE)
+        {
+            return -1;
+        }
+        for (int column = 0; column < board.getColumnCount(); column++)
+        {
+            if (board.isWinningMove(column))
+            {
+                return column;
+            }
+        }
+        for (int column = 0; column < board.getColumnCount(); column++)
+        {
+            if (board.play(column) == -1)
+            {
+                continue;
+            }
+            int reply = solved.lookup(board);
+            board.undo();
+            if (reply != Integer.MIN_VALUE && parentScore(reply) == score)
+            {
+                return column;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Records a proven result for the current position and for the position after the move
+     * about to be played.
+     * 
+     * @param column the move about to be played.
+     * @param score the proven score of the current position.
+     */
+    private void recordSolved(int column, int score)
+    {
+        Connect4Game board = new Connect4Game(myGame);
+        if (board.isRedTurn() != iAmRed)
+        {
+            board.setRedPlayedFirst(!board.getRedPlayedFirst());
+        }
+        solved.record(board, score);
+        if (score != AlphaBetaSearch.WIN_SCORE - 1)    // unless the move ends the game
+        {
+            board.play(column);
+            solved.record(board, score > 0 ? -score - 1 : score < 0 ? -score + 1 : 0);
+        }
+    }
+    
+    /**
+     * Converts the score of the position after a move into the score of the move itself.
+     * 
+     * @param reply the score of the position after the move, for the opponent.
+     * @return the score of the move for the player making it.
+     */
+    private static int parentScore(int reply)
+    {
+        return reply > 0 ? -reply + 1 : reply < 0 ? -reply - 1 : 0;
+    }
+    
+    /**
+     * Sets the opening book played from while the position is in it. By default the agent
+     * uses the book in OpeningBook.DEFAULT_FILE, if there is one.
+     * 
+     * @param book the book to use, or null to always search.
+     */
+    public void setOpeningBook(OpeningBook book)
+    {
+        this.book = book;
+    }
+    
+    /**
+     * Returns the name of this agent.
+     * 
+     * @return the agent's name
+     */
+    public String getName()
+    {
+        return "Iterative Deepening Agent";
+    }
+}
@@ -0,0 +1,198 @@
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An agent that searches with every core of the machine at once ("lazy SMP").
+ * 
+ * The agent's own thread deepens one ply at a time like an IterativeDeepeningAgent, while
+ * helper threads search the same position at staggered depths. All threads share one
+ * TranspositionTable, so whatever a helper finds makes the other searches faster. The move
+ * played is always the best move of the last depth the agent's own thread completed; when
+ * that thread is done the helpers are stopped. The helper threads are shared by all agents
+ * and are let go once they have been idle for a while.
+ * 
+ * Besides playing with a time budget, the agent can search to a fixed depth, which is useful
+ * for measuring how the time to reach a depth falls as threads are added.
+ */
+public class LazySmpAgent extends Agent
+{
+    private static final long DEFAULT_MOVE_BUDGET = 100;    // milliseconds per move if no other budget is set
+    private static ExecutorService helpers; // the helper threads of all agents, created on first use
+    
+    private int threads;    // the number of threads searching, including the agent's own
+    private int maxDepth;   // the depth to stop at, or 0 to search until the time runs out
+    private TranspositionTable table;   // the cache of search results shared by all threads
+    private AlphaBetaSearch[] searches; // the agent's own search, then one per helper; kept from move to move so their arrays are reused
+    private int lastDepth;  // the deepest search completed by the agent's own thread during the last move
+    private long lastNodes; // the number of nodes visited by all threads during the last move
+    
+    /**
+     * Constructs a new agent that uses every available core and a budget of 100 milliseconds
+     * per move.
+     * 
+     * @param game The game the agent will be playing.
+     * @param iAmRed True if the agent is Red, False if the agent is Yellow.
+     */
+    public LazySmpAgent(Connect4Game game, boolean iAmRed)
+    {
+        this(game, iAmRed, Runtime.getRuntime().availableProcessors(), DEFAULT_MOVE_BUDGET,
+            TranspositionTable.getShared());
+    }
+    
+    /**
+     * Constructs a new agent with the given number of threads, time budget and table.
+     * 
+     * @param game The game the agent will be playing.
+     * @param iAmRed True if the agent is Red, False if the agent is Yellow.
+     * @param threads The number of threads to search with, including the agent's own.
+     * @param moveBudget The time allowed per move in milliseconds, or 0 for no limit.
+     * @param table The table caching search results; it may be shared with other agents.
+     */
+    public LazySmpAgent(Connect4Game game, boolean iAmRed, int threads, long moveBudget, TranspositionTable table)
+    {
+        super(game, iAmRed);
+        this.threads = Math.max(1, threads);
+        setMoveBudget(moveBudget);
+        this.table = table;
+    }
+    
+    /**
+     * Sets the depth at which to stop searching, whatever time is left.
+     * 
+     * @param maxDepth the number of plies to search, or 0 to search until the time runs out.
+     */
+    public void setMaxDepth(int maxDepth)
+    {
+        this.maxDepth = Math.max(0, maxDepth);
+    }
+    
+    /**
+     * Searches with all threads until the time budget runs out or the maximum depth is
+     * reached, then drops a token into the best column found by the agent's own thread.
+     */
+    public void move()
+    {
+        long deadline = getMoveDeadline();
+        int emptySlots = myGame.getColumnCount() * myGame.getRowCount() - myGame.getMoveCount();
+        int depthLimit = maxDepth > 0 ? Math.min(maxDepth, emptySlots) : emptySlots;
+        AtomicLong nodes = new AtomicLong();
+        if (searches == null)
+        {
+            searches = new AlphaBetaSearch[threads];
+            for (int i = 0; i < threads; i++)
+            {
+                searches[i] = new AlphaBetaSearch(myGame, iAmRed);
+            }
+        }
+        else
+        {
+            for (AlphaBetaSearch search : searches)
+            {
+                search.setPosition(myGame, iAmRed);
+                search.stop(false);
+                search.setDeadline(Long.MAX_VALUE);
+            }
+        }
+        Future<?>[] helperResults = new Future<?>[threads - 1];
+        synchronized (LazySmpAgent.class)
+        {
+            if (helpers == null && threads > 1)
+            {
+                helpers = Executors.newCachedThreadPool(runnable -> {
+                    Thread thread = new Thread(runnable, "LazySmpAgent helper");
+                    thread.setDaemon(true);    // never keep the program running after the game
+                    return thread;
+                });
+            }
+        }
+        for (int i = 0; i < helperResults.length; i++)
+        {
+            AlphaBetaSearch helper = searches[i + 1];
+            helper.setTranspositionTable(table);
+            helper.setDeadline(deadline);
+            int firstDepth = 2 + i % 3;  // stagger the helpers so they work ahead of the main search
+            helperResults[i] = helpers.submit(() -> {
+                for (int depth = firstDepth; depth <= depthLimit; depth++)
+                {
+                    helper.search(depth);
+                    nodes.addAndGet(helper.getNodes());
+                    if (helper.wasStopped())
+                    {
+                        break;
+                    }
+                }
+            });
+        }
+        AlphaBetaSearch search = searches[0];
+        search.setTranspositionTable(table);
+        int column = search.search(1);  // always complete one ply so there is a move to play
+        nodes.addAndGet(search.getNodes());
+        lastDepth = 1;
+        search.setDeadline(deadline);
+        for (int depth = 2; depth <= depthLimit && !AlphaBetaSearch.isDecided(search.getBestScore()); depth++)
+        {
+            int best = search.search(depth);
+            nodes.addAndGet(search.getNodes());
+            if (search.wasStopped())
+            {
+                break;
+            }
+            column = best;
+            lastDepth = depth;
+        }
+        for (int i = 1; i < searches.length; i++)
+        {
+            searches[i].stop(true);
+        }
+        for (int i = 0; i < helperResults.length; i++)
+        {
+            try
+            {
+                helperResults[i].get();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            catch (ExecutionException e)
+            {
+                throw new IllegalStateException("a helper search failed", e.getCause());
+            }
+        }
+        lastNodes = nodes.get();
+        myGame.getColumn(column).drop(iAmRed);
+    }
+    
+    /**
+     * Get the deepest search completed by the agent's own thread during the last move.
+     * 
+     * @return the number of plies searched.
+     */
+    public int getLastDepth()
+    {
+        return lastDepth;
+    }
+    
+    /**
+     * Get the number of nodes visited by all threads together during the last move.
+     * 
+     * @return the node count.
+     */
+    public long getLastNodes()
+    {
+        return lastNodes;
+    }
+    
+    /**
+     * Returns the name of this agent.
+     * 
+     * @return the agent's name
+     */
+    public String getName()
+    {
+        return "Lazy SMP Agent";
+    }
+}
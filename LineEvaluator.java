@@ -0,0 +1,128 @@
+/**
+ * A heuristic score of a position that is kept up to date as tokens are placed and removed,
+ * so a search can score the positions at the bottom of its tree without looking at the board.
+ * 
+ * The score adds up the lines of WinLines that are still open to one color: a line holding k
+ * tokens of one color and none of the other is worth k * k to that color, and a line holding
+ * tokens of both colors is worth nothing to either. The evaluator keeps the number of tokens
+ * of each color in every line, so placing or removing a token only rescores the few lines
+ * through its slot.
+ * 
+ * Boards too large for a WinLines table cannot be evaluated this way.
+ * 
+ * The evaluator must be told about every change to the board it follows, in the same order
+ * as the changes are made.
+ * 
+ * Your agent may use this class.
+ */
+public class LineEvaluator
+{
+    public static final int MAX_SCORE = AlphaBetaSearch.WIN_SCORE / 2;  // the largest score getScore(...) returns, far from any win score
+    
+    private final WinLines lines;   // the winning lines of the board
+    private final int[] redCounts, yellowCounts;    // per line: the number of tokens of each color
+    private int score;  // the score for red, that is red's lines minus yellow's
+    
+    /**
+     * Creates an evaluator of a position.
+     * 
+     * @param game the position; it is counted once here and must then be followed with
+     * place(...) and remove(...).
+     * @throws IllegalArgumentException if the board is too large for a WinLines table.
+     */
+    public LineEvaluator(Connect4Game game)
+    {
+        lines = WinLines.get(game);
+        if (lines == null)
+        {
+            throw new IllegalArgumentException("a " + game.getColumnCount() + "x" + game.getRowCount()
+                + " board is too large for a win-line table");
+        }
+        redCounts = new int[lines.getLineCount()];
+        yellowCounts = new int[lines.getLineCount()];
+        reset(game);
+    }
+    
+    /**
+     * Recounts every line of a position on the same board, forgetting the one followed so far.
+     * 
+     * @param game the position to follow from now on.
+     */
+    public void reset(Connect4Game game)
+    {
+        lines.countTokens(game, redCounts, yellowCounts);
+        score = 0;
+        for (int line = 0; line < redCounts.length; line++)
+        {
+            score += value(redCounts[line], yellowCounts[line]);
+        }
+    }
+    
+    /**
+     * Updates the score for a token placed on the board.
+     * 
+     * @param column the column of the token.
+     * @param row the row of the token.
+     * @param red true if the token is red, false if it is yellow.
+     */
+    public void place(int column, int row, boolean red)
+    {
+        update(column, row, red ? 1 : 0, red ? 0 : 1);
+    }
+    
+    /**
+     * Updates the score for a token removed from the board.
+     * 
+     * @param column the column of the token.
+     * @param row the row of the token.
+     * @param red true if the token is red, false if it is yellow.
+     */
+    public void remove(int column, int row, boolean red)
+    {
+        update(column, row, red ? -1 : 0, red ? 0 : -1);
+    }
+    
+    /**
+     * Get the score of the position for one player.
+     * 
+     * @param red true for red's point of view, false for yellow's.
+     * @return the score, positive if the player is better off, between -MAX_SCORE and MAX_SCORE.
+     */
+    public int getScore(boolean red)
+    {
+        int clamped = Math.max(-MAX_SCORE, Math.min(MAX_SCORE, score));
+        return red ? clamped : -clamped;
+    }
+    
+    /**
+     * Changes the token counts of every line through a slot and rescores those lines.
+     */
+    private void update(int column, int row, int redChange, int yellowChange)
+    {
+        int count = lines.getLineCount(column, row);
+        for (int i = 0; i < count; i++)
+        {
+            int line = lines.getLine(column, row, i);
+            score -= value(redCounts[line], yellowCounts[line]);
+            redCounts[line] += redChange;
+            yellowCounts[line] += yellowChange;
+            score += value(redCounts[line], yellowCounts[line]);
+        }
+    }
+    
+    /**
+     * Scores one line for red.
+     */
+    private static int value(int red, int yellow)
+    {
+        if (yellow == 0)
+        {
+            return red * red;
+        }
+        if (red == 0)
+        {
+            return -yellow * yellow;
+        }
+        return 0;
+    }
+}
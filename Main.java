@@ -8,7 +8,7 @@ public class Main
 {
     public static void main(String[] args)
     {
-        Connect4Game game = new Connect4Game(7, 6); // create the game; these sizes can be altered for larger or smaller games
+        Connect4Game game = new Connect4Game(7, 6); // create the game; these sizes can be altered for larger or smaller games, and a third argument sets the number of tokens in a row needed to win
         Agent redPlayer = new MyAgent2(game, true); // create the red player, any subclass of Agent
         Agent yellowPlayer = new BrilliantAgent(game, false); // create the yellow player, any subclass of Agent
         
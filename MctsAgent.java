@@ -0,0 +1,446 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An agent that chooses moves by Monte Carlo tree search (UCT).
+ * 
+ * Each iteration walks down the search tree, picking the child with the best upper confidence
+ * bound, adds the children of the leaf it reaches and finishes the game from there with random
+ * moves. The result is counted in every node along the path. When time or the playout limit
+ * runs out, the agent plays the move that was tried most often.
+ * 
+ * The tree is kept in parallel primitive arrays rather than node objects, and every playout
+ * is played and taken back on one private Connect4Game with play(...) and undo(), so searching
+ * creates no garbage. After each move the agent keeps the part of the tree below the move it
+ * played and the opponent's reply, so the work done for that line is not lost.
+ */
+public class MctsAgent extends Agent
+{
+    private static final long DEFAULT_MOVE_BUDGET = 100;    // milliseconds per move if no other budget is set
+    private static final int DEFAULT_CAPACITY = 1 << 20;    // the number of nodes the tree can hold
+    private static final int UNTIMED_PLAYOUT_LIMIT = 100000;    // the playouts per move when neither a time budget nor a playout limit is set
+    private static final double EXPLORATION = 1.4;  // the weight of the exploration term of the UCT formula
+    private static final byte OPEN = 0, WON = 1, DRAWN = 2; // how the game stands after a node's move
+    
+    private int capacity;   // the number of nodes the tree can hold
+    private int[] firstChild, childCount;   // per node: where its children start and how many there are, -1 until expanded
+    private int[] column, visits, score;    // per node: its move, its visits and twice its wins plus its draws
+    private byte[] outcome; // per node: OPEN, WON or DRAWN
+    private int[] spareFirstChild, spareChildCount, spareColumn, spareVisits, spareScore;   // the arrays the tree is copied into when it is pruned
+    private byte[] spareOutcome;
+    private int nodeCount;  // the number of nodes in use
+    private int root;   // the node of the current position
+    private int[] path; // the nodes visited by the current iteration
+    private Connect4Game board; // the position of the root, changed and restored during each iteration
+    private long random;    // the state of the random number generator used by playouts
+    private int playoutLimit;   // the maximum number of playouts per move, 0 if none was set
+    private int lastPlayouts;   // the number of playouts made during the last move
+    private long totalPlayouts, totalNanos; // the playouts made and time spent during all moves so far
+    
+    /**
+     * Constructs a new agent with a budget of 100 milliseconds per move.
+     * 
+     * @param game The game the agent will be playing.
+     * @param iAmRed True if the agent is Red, False if the agent is Yellow.
+     */
+    public MctsAgent(Connect4Game game, boolean iAmRed)
+    {
+        this(game, iAmRed, DEFAULT_MOVE_BUDGET, DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * Constructs a new agent with the given time budget and tree size.
+     * 
+     * @param game The game the agent will be playing.
+     * @param iAmRed True if the agent is Red, False if the agent is Yellow.
+     * @param moveBudget The time allowed per move in milliseconds, or 0 for no limit, in which
+     * case a move ends after 100000 playouts unless a playout limit is set.
+     * @param capacity The number of nodes the tree can hold; once it is full, the tree stops
+     * growing but playouts go on.
+     */
+    public MctsAgent(Connect4Game game, boolean iAmRed, long moveBudget, int capacity)
+    {
+        super(game, iAmRed);
+        setMoveBudget(moveBudget);
+        this.capacity = Math.max(1 + game.getColumnCount(), capacity);
+        firstChild = new int[this.capacity];
+        childCount = new int[this.capacity];
+        column = new int[this.capacity];
+        visits = new int[this.capacity];
+        score = new int[this.capacity];
+        outcome = new byte[this.capacity];
+        spareFirstChild = new int[this.capacity];
+        spareChildCount = new int[this.capacity];
+        spareColumn = new int[this.capacity];
+        spareVisits = new int[this.capacity];
+        spareScore = new int[this.capacity];
+        spareOutcome = new byte[this.capacity];
+        random = System.nanoTime() | 1;
+    }
+    
+    /**
+     * Sets the maximum number of playouts per move. The agent stops at whichever comes first,
+     * this limit or its time budget. Without a time budget the agent stops after 100000
+     * playouts unless it is given a limit.
+     * 
+     * @param playoutLimit the maximum number of playouts.
+     */
+    public void setPlayoutLimit(int playoutLimit)
+    {
+        this.playoutLimit = Math.max(1, playoutLimit);
+    }
+    
+    /**
+     * Runs playouts until the time budget or the playout limit runs out, then drops a token
+     * into the column that was tried most often.
+     */
+    public void move()
+    {
+        long start = System.nanoTime();
+        long deadline = getMoveDeadline();
+        int limit = playoutLimit > 0 ? playoutLimit : deadline == Long.MAX_VALUE ? UNTIMED_PLAYOUT_LIMIT : Integer.MAX_VALUE;
+        followGame();
+        int playouts = 0;
+        do
+        {
+            iterate();
+            playouts++;
+        }
+        while (playouts < limit && System.nanoTime() < deadline);
+        int best = -1;
+        for (int child = firstChild[root]; child < firstChild[root] + childCount[root]; child++)
+        {
+            if (best == -1 || visits[child] > visits[best])
+            {
+                best = child;
+            }
+        }
+        lastPlayouts = playouts;
+        totalPlayouts += playouts;
+        totalNanos += System.nanoTime() - start;
+        root = best;
+        board.play(column[best]);
+        myGame.getColumn(column[best]).drop(iAmRed);
+    }
+    
+    /**
+     * Get the number of playouts made during the last move.
+     * 
+     * @return the number of playouts.
+     */
+    public int getLastPlayouts()
+    {
+        return lastPlayouts;
+    }
+    
+    /**
+     * Get the number of playouts made per second over all moves so far.
+     * 
+     * @return the playout rate, or 0 if the agent has not moved yet.
+     */
+    public double getPlayoutsPerSecond()
+    {
+        if (totalNanos == 0)
+        {
+            return 0;
+        }
+        return totalPlayouts * 1e9 / totalNanos;
+    }
+    
+    /**
+     * Get the agent's playouts in its game so far and their rate, for GameSimulator to report.
+     * The rate is only given once the agent has moved.
+     * 
+     * @return the number of playouts and the playouts per second.
+     */
+    public Map<String, Long> getCounters()
+    {
+        Map<String, Long> counters = new LinkedHashMap<>();
+        counters.put("playouts", totalPlayouts);
+        if (totalNanos > 0)
+        {
+            counters.put("playouts per second", Math.round(getPlayoutsPerSecond()));
+        }
+        return counters;
+    }
+    
+    /**
+     * Get the number of nodes in the tree.
+     * 
+     * @return the number of nodes.
+     */
+    public int getTreeSize()
+    {
+        return nodeCount;
+    }
+    
+    /**
+     * Returns the name of this agent.
+     * 
+     * @return the agent's name
+     */
+    public String getName()
+    {
+        return "MCTS Agent";
+    }
+    
+    /**
+     * Brings the private board and the tree up to date with the game. If the opponent made a
+     * single move since this agent's last move, the tree below that move is kept; otherwise a
+     * new tree is started.
+     */
+    private void followGame()
+    {
+        boolean reused = false;
+        if (board != null && board.getMoveCount() + 1 == myGame.getMoveCount())
+        {
+            board.play(myGame.getLastColumn());
+            if (board.getHash() == myGame.getHash() && board.getColumnCount() == myGame.getColumnCount()
+                && board.getRowCount() == myGame.getRowCount())
+            {
+                int reply = -1;
+                for (int child = firstChild[root]; child < firstChild[root] + childCount[root]; child++)
+                {
+                    if (column[child] == myGame.getLastColumn())
+                    {
+                        reply = child;
+                    }
+                }
+                if (reply != -1)
+                {
+                    prune(reply);
+                    reused = true;
+                }
+            }
+        }
+        if (!reused)
+        {
+            board = new Connect4Game(myGame);
+            if (board.isRedTurn() != iAmRed)
+            {
+                board.setRedPlayedFirst(!board.getRedPlayedFirst());
+            }
+            nodeCount = 1;
+            root = 0;
+            childCount[0] = -1;
+            visits[0] = 0;
+            score[0] = 0;
+            outcome[0] = OPEN;
+        }
+        if (path == null || path.length < board.getColumnCount() * board.getRowCount() + 1)
+        {
+            path = new int[board.getColumnCount() * board.getRowCount() + 1];
+        }
+    }
+    
+    /**
+     * Throws away every node that is not below the given node, which becomes node 0.
+     * 
+     * @param newRoot the node to keep.
+     */
+    private void prune(int newRoot)
+    {
+        // Copy the subtree breadth first, so each node's children stay next to each other. Until
+        // a copied node is reached, its firstChild entry holds its index in the old arrays.
+        copyNode(newRoot, 0);
+        int copied = 1;
+        for (int next = 0; next < copied; next++)
+        {
+            int node = spareFirstChild[next];
+            spareFirstChild[next] = copied;
+            for (int child = firstChild[node]; child < firstChild[node] + childCount[node]; child++)
+            {
+                copyNode(child, copied++);
+            }
+        }
+        int[] ints = firstChild; firstChild = spareFirstChild; spareFirstChild = ints;
+        ints = childCount; childCount = spareChildCount; spareChildCount = ints;
+        ints = column; column = spareColumn; spareColumn = ints;
+        ints = visits; visits = spareVisits; spareVisits = ints;
+        ints = score; score = spareScore; spareScore = ints;
+        byte[] bytes = outcome; outcome = spareOutcome; spareOutcome = bytes;
+        nodeCount = copied;
+        root = 0;
+    }
+    
+    /**
+     * Copies a node into the spare arrays, remembering its old index in place of its children.
+     * 
+     * @param node the index of the node in the tree.
+     * @param copy the index of the copy in the spare arrays.
+     */
+    private void copyNode(int node, int copy)
+    {
+        spareFirstChild[copy] = node;
+        spareChildCount[copy] = childCount[node];
+        spareColumn[copy] = column[node];
+        spareVisits[copy] = visits[node];
+        spareScore[copy] = score[node];
+        spareOutcome[copy] = outcome[node];
+    }
+    
+    /**
+     * Runs one iteration: selection, expansion, a random playout and backing up the result.
+     */
+    private void iterate()
+    {
+        int rootMoves = board.getMoveCount();
+        int node = root;
+        int length = 0;
+        path[length++] = node;
+        while (childCount[node] > 0 && outcome[node] == OPEN)
+        {
+            node = select(node);
+            board.play(column[node]);
+            path[length++] = node;
+        }
+        if (outcome[node] == OPEN && childCount[node] == -1 && expand(node))
+        {
+            node = firstChild[node] + (int) ((nextRandom() >>> 33) % childCount[node]);
+            board.play(column[node]);
+            path[length++] = node;
+        }
+        char winner;
+        if (outcome[node] == WON)
+        {
+            winner = board.getWinner();
+        }
+        else if (outcome[node] == DRAWN)
+        {
+            winner = 'N';
+        }
+        else
+        {
+            winner = playout();
+        }
+        // a node's score counts for the player who made the move into it
+        for (int i = length - 1; i >= 0; i--)
+        {
+            int n = path[i];
+            visits[n]++;
+            if (winner == 'N')
+            {
+                score[n] += 1;
+            }
+            else if ((winner == 'R') == ((i % 2 == 1) == iAmRed))
+            {
+                score[n] += 2;
+            }
+        }
+        while (board.getMoveCount() > rootMoves)
+        {
+            board.undo();
+        }
+    }
+    
+    /**
+     * Picks the child with the highest upper confidence bound.
+     * 
+     * @param node the node whose children to choose from.
+     * @return the chosen child.
+     */
+    private int select(int node)
+    {
+        double logVisits = Math.log(visits[node]);
+        int best = -1;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int child = firstChild[node]; child < firstChild[node] + childCount[node]; child++)
+        {
+            if (visits[child] == 0)
+            {
+                return child;
+            }
+            double value = score[child] / (2.0 * visits[child])
+                + EXPLORATION * Math.sqrt(logVisits / visits[child]);
+            if (value > bestValue)
+            {
+                bestValue = value;
+                best = child;
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Adds a node's children to the tree, one for each column that is not full, and notes
+     * which of them end the game.
+     * 
+     * @param node the node to expand.
+     * @return true if the children were added, false if the tree is full.
+     */
+    private boolean expand(int node)
+    {
+        if (nodeCount + board.getColumnCount() > capacity)
+        {
+            return false;
+        }
+        firstChild[node] = nodeCount;
+        int count = 0;
+        for (int c = 0; c < board.getColumnCount(); c++)
+        {
+            if (board.getColumn(c).getIsFull())
+            {
+                continue;
+            }
+            int child = nodeCount + count++;
+            column[child] = c;
+            childCount[child] = -1;
+            visits[child] = 0;
+            score[child] = 0;
+            if (board.isWinningMove(c))
+            {
+                outcome[child] = WON;
+            }
+            else if (board.getMoveCount() + 1 == board.getColumnCount() * board.getRowCount())
+            {
+                outcome[child] = DRAWN;
+            }
+            else
+            {
+                outcome[child] = OPEN;
+            }
+        }
+        childCount[node] = count;
+        nodeCount += count;
+        return true;
+    }
+    
+    /**
+     * Plays random moves until the game ends. The moves are left on the board.
+     * 
+     * @return 'R' if red won, 'Y' if yellow won, 'N' if the game was drawn.
+     */
+    private char playout()
+    {
+        int columns = board.getColumnCount();
+        int slots = columns * board.getRowCount();
+        while (board.getMoveCount() < slots)
+        {
+            int c = (int) ((nextRandom() >>> 33) % columns);
+            while (board.getColumn(c).getIsFull())
+            {
+                c = c + 1 == columns ? 0 : c + 1;
+            }
+            board.play(c);
+            char winner = board.getWinner();
+            if (winner != 'N')
+            {
+                return winner;
+            }
+        }
+        return 'N';
+    }
+    
+    /**
+     * Advances the xorshift random number generator used by playouts.
+     * 
+     * @return the next random number.
+     */
+    private long nextRandom()
+    {
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        return random;
+    }
+}
@@ -0,0 +1,206 @@
+import java.util.Arrays;
+
+/**
+ * Decides the order in which a search tries the moves of a position.
+ * 
+ * Alpha-beta search prunes the most when the best move is tried first. The move a
+ * TranspositionTable remembers as best for the position is always tried first. The other
+ * moves are sorted mainly by how close their column is to the center, which is the best
+ * single guess in Connect Four, and two smaller bonuses can lift a move by at most two steps
+ * of that order:
+ * 
+ * 1. a history bonus, which grows with the logarithm of the credit earned by moves to the same
+ * slot causing cutoffs anywhere in the search, worth up to one and a half steps;
+ * 2. a "killer" bonus, worth half a step, for the moves that recently caused a cutoff at the
+ * same ply in a sibling position.
+ * 
+ * The ordering keeps count of how often the first move tried caused the cutoff, which is the
+ * usual measure of how good an ordering is. One ordering can be kept across the searches of
+ * an iterative-deepening loop so that what it learned at one depth helps the next.
+ * 
+ * Your agent may use this class.
+ */
+public class MoveOrdering
+{
+    private static final int KILLERS = 2;   // the number of killer moves kept per ply
+    private static final int CENTER_STEP = 8;   // the bonus for each step closer to the center
+    private static final int HISTORY_CAP = 12;  // the largest bonus history can give, at one bit per doubling
+    private static final int KILLER_BONUS = 4;  // the bonus for a killer move
+    private static final int INITIAL_PLIES = 64;    // the plies killers are kept for at first; more are added as they are reached
+    
+    private final int columns, rows;    // the size of the board
+    private final int[] centerRank; // per column: its place in the center-first order, 0 for the center
+    private int[] killers;  // per ply: the last KILLERS columns that caused a cutoff, -1 if none
+    private final long[] history;   // per player and slot: the credit earned by causing cutoffs
+    private final long[] keys;  // the sort keys of the moves being ordered
+    private long cutoffs, firstMoveCutoffs; // how many cutoffs there were and how many the first move caused
+    
+    /**
+     * Creates an ordering for a board.
+     * 
+     * @param columns the number of columns of the board.
+     * @param rows the number of rows of the board.
+     */
+    public MoveOrdering(int columns, int rows)
+    {
+        this.columns = columns;
+        this.rows = rows;
+        centerRank = new int[columns];
+        int center = (columns - 1) / 2;
+        for (int i = 0; i < columns; i++)
+        {
+            // center, then alternately one step right and one step left of it
+            centerRank[i % 2 == 0 ? center - i / 2 : center + (i + 1) / 2] = i;
+        }
+        killers = new int[KILLERS * Math.min(INITIAL_PLIES, columns * rows + 1)];
+        Arrays.fill(killers, -1);
+        history = new long[2 * columns * rows];
+        keys = new long[columns];
+    }
+    
+    /**
+     * Lists the legal moves of a position in the order to try them.
+     * 
+     * @param board the position.
+     * @param ply the number of plies the position is below the root of the search.
+     * @param tableMove the move the transposition table remembers, or -1 if none.
+     * @param moves the array to fill; it needs room for one entry per column.
+     * @return the number of moves listed.
+     */
+    public int order(Connect4Game board, int ply, int tableMove, int[] moves)
+    {
+        int side = board.isRedTurn() ? 0 : 1;
+        int count = 0;
+        for (int column = 0; column < columns; column++)
+        {
+            int height = board.getColumnHeight(column);
+            if (height == rows)
+            {
+                continue;
+            }
+            long key;
+            if (column == tableMove)
+            {
+                key = Long.MAX_VALUE;
+            }
+            else
+            {
+                long credit = history[(side * columns + column) * rows + height];
+                key = (long) (columns - centerRank[column]) * CENTER_STEP
+                    + Math.min(HISTORY_CAP, 64 - Long.numberOfLeadingZeros(credit))
+                    + (isKiller(ply, column) ? KILLER_BONUS : 0);
+            }
+            // insert in order, highest key first
+            int i = count++;
+            while (i > 0 && keys[i - 1] < key)
+            {
+                keys[i] = keys[i - 1];
+                moves[i] = moves[i - 1];
+                i--;
+            }
+            keys[i] = key;
+            moves[i] = column;
+        }
+        return count;
+    }
+    
+    /**
+     * Notes that a move caused a cutoff, making it a killer at its ply and raising its history
+     * score.
+     * 
+     * @param board the position the move was played in, with the move already taken back.
+     * @param ply the number of plies the position is below the root of the search.
+     * @param column the move that caused the cutoff.
+     * @param depth the number of plies that were left to search; deeper cutoffs count more.
+     * @param moveNumber how many moves were tried before it.
+     */
+    public void recordCutoff(Connect4Game board, int ply, int column, int depth, int moveNumber)
+    {
+        cutoffs++;
+        if (moveNumber == 0)
+        {
+            firstMoveCutoffs++;
+        }
+        if (!isKiller(ply, column))
+        {
+            if ((ply + 1) * KILLERS > killers.length)
+            {
+                int old = killers.length;
+                killers = Arrays.copyOf(killers, Math.max((ply + 1) * KILLERS, 2 * old));
+                Arrays.fill(killers, old, killers.length, -1);
+            }
+            for (int k = KILLERS - 1; k > 0; k--)
+            {
+                killers[ply * KILLERS + k] = killers[ply * KILLERS + k - 1];
+            }
+            killers[ply * KILLERS] = column;
+        }
+        int side = board.isRedTurn() ? 0 : 1;
+        int slot = (side * columns + column) * rows + board.getColumnHeight(column);
+        history[slot] = Math.min(history[slot] + (long) depth * depth, 1L << 40);
+    }
+    
+    /**
+     * Halves every history score and forgets the killer moves, so that what is learned about
+     * a new position soon outweighs what was learned about earlier ones. Call this between
+     * moves.
+     */
+    public void age()
+    {
+        for (int i = 0; i < history.length; i++)
+        {
+            history[i] >>= 1;
+        }
+        Arrays.fill(killers, -1);
+    }
+    
+    /**
+     * Get the number of cutoffs recorded.
+     * 
+     * @return the cutoff count.
+     */
+    public long getCutoffs()
+    {
+        return cutoffs;
+    }
+    
+    /**
+     * Get the share of cutoffs caused by the first move tried. The closer to 1, the better the
+     * ordering.
+     * 
+     * @return the first-move cutoff rate, or 0 if there were no cutoffs.
+     */
+    public double getFirstMoveCutoffRate()
+    {
+        if (cutoffs == 0)
+        {
+            return 0;
+        }
+        return firstMoveCutoffs / (double) cutoffs;
+    }
+    
+    /**
+     * Resets the cutoff counters.
+     */
+    public void resetCounters()
+    {
+        cutoffs = 0;
+        firstMoveCutoffs = 0;
+    }
+    
+    private boolean isKiller(int ply, int column)
+    {
+        if ((ply + 1) * KILLERS > killers.length)
+        {
+            return false;   // no cutoff has been recorded this deep yet
+        }
+        for (int k = 0; k < KILLERS; k++)
+        {
+            if (killers[ply * KILLERS + k] == column)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -54,6 +54,7 @@ public class MyAgent extends Agent
             int playerBestColumn = -1;
             int playerLargest = 0; // The largest number of adjacent player's tokens at any open slot on the board.
             int largestOpponent = 0; // The largest number of adjacent opponent's tokens at any open slot on the board (only measured as a "tiebreaker" when player's tokens are equal).
+            int needed = myGame.getWinLength() - 1; // The number of adjacent tokens that one more token turns into a win.
             for (int i = 0; i < myGame.getColumnCount(); i++)  // Iterate through each column            
             {
                 if ( getLowestEmptyIndex(myGame.getColumn(i) ) != -1 ) // If there's an open slot in this column...
@@ -61,7 +62,7 @@ public class MyAgent extends Agent
                     int slotIndex = getLowestEmptyIndex( myGame.getColumn(i) );
                     boolean wouldGiveWinningMove = false;
                     //Find out if a move would leave the opponent with a winning move
-                    if (slotIndex > 0 && opponentLeftAndRight(i, slotIndex-1) == 3 || opponentUpperLeftLowerRightDiagonal(i, slotIndex-1) == 3 || opponentLowerLeftUpperRightDiagonal(i, slotIndex-1) == 3)
+                    if (slotIndex > 0 && opponentLeftAndRight(i, slotIndex-1) >= needed || opponentUpperLeftLowerRightDiagonal(i, slotIndex-1) >= needed || opponentLowerLeftUpperRightDiagonal(i, slotIndex-1) >= needed)
                     {
                         wouldGiveWinningMove = true;
                     }
@@ -575,20 +576,7 @@ public class MyAgent extends Agent
      */
     public void moveOnColumn(int columnNumber)
     {
-        int lowestEmptySlotIndex = getLowestEmptyIndex(myGame.getColumn(columnNumber));   // Find the top empty slot in the column
-                                                                                                  // If the column is full, lowestEmptySlot will be -1
-        if (lowestEmptySlotIndex > -1)  // if the column is not full
-        {
-            Connect4Slot lowestEmptySlot = myGame.getColumn(columnNumber).getSlot(lowestEmptySlotIndex);  // get the slot in this column at this index
-            if (iAmRed) // If the current agent is the Red player...
-            {
-                lowestEmptySlot.addRed(); // Place a red token into the empty slot
-            }
-            else // If the current agent is the Yellow player (not the Red player)...
-            {
-                lowestEmptySlot.addYellow(); // Place a yellow token into the empty slot
-            }
-        }
+        myGame.getColumn(columnNumber).drop(iAmRed);    // Drop a token of my color; if the column is full, nothing changes
     }
 
     /**
@@ -598,15 +586,7 @@ public class MyAgent extends Agent
      * @return the index of the top empty slot in a particular column; -1 if the column is already full.
      */
     public int getLowestEmptyIndex(Connect4Column column) {
-        int lowestEmptySlot = -1;
-        for  (int i = 0; i < column.getRowCount(); i++)
-        {
-            if (!column.getSlot(i).getIsFilled())
-            {
-                lowestEmptySlot = i;
-            }
-        }
-        return lowestEmptySlot;
+        return column.lowestEmptyIndex();
     }
 
     /**
@@ -636,12 +616,13 @@ public class MyAgent extends Agent
      */
     public int iCanWin()
     {
+        int needed = myGame.getWinLength() - 1; // The number of adjacent tokens that one more token turns into a win.
         for (int i = 0; i < myGame.getColumnCount(); i++)  // Iterate through each column
         {
             if ( getLowestEmptyIndex(myGame.getColumn(i)) != -1 ) // If there's an open slot in this column...
             {
                 int slotIndex = getLowestEmptyIndex(myGame.getColumn(i));
-                if ( playersBelow(i, slotIndex) == 3 || playersLeftAndRight(i, slotIndex) == 3 || playersUpperLeftLowerRightDiagonal(i, slotIndex) == 3 || playersLowerLeftUpperRightDiagonal(i, slotIndex) == 3   )  // Test is any of the methods return 3 consecutive tokens
+                if ( playersBelow(i, slotIndex) >= needed || playersLeftAndRight(i, slotIndex) >= needed || playersUpperLeftLowerRightDiagonal(i, slotIndex) >= needed || playersLowerLeftUpperRightDiagonal(i, slotIndex) >= needed   )  // Test if any of the methods return enough consecutive tokens to win
                 {                    
                     return i;
                 }
@@ -661,12 +642,13 @@ public class MyAgent extends Agent
      */
     public int theyCanWin()
     {
+        int needed = myGame.getWinLength() - 1; // The number of adjacent tokens that one more token turns into a win.
         for (int i = 0; i < myGame.getColumnCount(); i++)  // Iterate through each column
         {
             if ( getLowestEmptyIndex(myGame.getColumn(i)) != -1 ) // If there's an open slot in this column...
             {
                 int slotIndex = getLowestEmptyIndex(myGame.getColumn(i));
-                if ( opponentsBelow(i, slotIndex) == 3 || opponentLeftAndRight(i, slotIndex) == 3 || opponentUpperLeftLowerRightDiagonal(i, slotIndex) == 3 || opponentLowerLeftUpperRightDiagonal(i, slotIndex) == 3   )  // Test if any of the methods return 3 tokens
+                if ( opponentsBelow(i, slotIndex) >= needed || opponentLeftAndRight(i, slotIndex) >= needed || opponentUpperLeftLowerRightDiagonal(i, slotIndex) >= needed || opponentLowerLeftUpperRightDiagonal(i, slotIndex) >= needed   )  // Test if any of the methods return enough tokens to win
                 {   
                     return i;
                 }
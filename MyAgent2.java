@@ -1,9 +1,46 @@
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Random;
 
+/**
+ * A heuristic agent that hands over to an exact endgame solver once the game is nearly over.
+ * 
+ * Early in the game the agent looks for immediate wins and threats and otherwise extends its
+ * longest line. Once few enough slots are empty, or once a quick probe shows that the rest of
+ * the game can be searched within a small number of nodes, it solves the position with a full
+ * AlphaBetaSearch instead and plays perfectly from there on.
+ * 
+ * The threat analysis of a position is worked out once, the first time it is asked for, and
+ * kept as column masks until the position changes, so the many threat queries made while
+ * choosing one move never repeat a board scan.
+ */
 public class MyAgent2 extends Agent
 {
+    public static final int DEFAULT_ENDGAME_THRESHOLD = 12;    // solve outright once this few slots are empty
+    public static final long DEFAULT_PROBE_NODE_LIMIT = 20000;  // the nodes a probe may take before giving up
+    public static final int DEFAULT_PROBE_EMPTY_SLOTS = 30; // probe only once this few slots are empty
+    
     Random r;
+    private int endgameThreshold = DEFAULT_ENDGAME_THRESHOLD;  // the number of empty slots at which solving always starts
+    private long probeNodeLimit = DEFAULT_PROBE_NODE_LIMIT; // the node limit of a probe, 0 for no probes
+    private int probeEmptySlots = DEFAULT_PROBE_EMPTY_SLOTS;   // the number of empty slots at which probing starts
+    private AlphaBetaSearch solver; // the endgame solver, created on first use
+    private boolean solving;    // whether the last move was played by the solver
+    private int handOff = -1;   // the number of empty slots when the solver last took over, -1 if never
+    private long solverNodes, solverNanos;  // the nodes searched and time spent by the solver so far
+    private static final int[][] DIRECTIONS = { { 0, 1 }, { 1, 0 }, { 1, 1 }, { 1, -1 } };  // column and row steps of the four line directions
+    private WinLines lines; // the winning lines of the board, looked up by the first analysis; null on boards too large for a table
+    private boolean linesLookedUp;  // whether that lookup has been made
+    private int streakCount, streakFillable;    // the second and third results of the last consecutiveTokens call
+    private int runFillable;    // the second result of the last consecutiveTokensLength call
+    private int analyzedMoves = -1; // the move count of the position the masks below describe, -1 if none
+    private long analyzedHash;  // the hash of that position
+    private final BitSet[] completes = new BitSet[4];  // per analysis set: the columns where a token would complete a line
+    private final BitSet[] setsUp = new BitSet[4]; // per analysis set: the columns where a token would set up a winning move
+    private final BitSet unsafe = new BitSet();    // the columns that would give the opponent a winning move
+    private final BitSet safe = new BitSet();  // the open columns that would not
 
     /**
      * Constructs a new agent, giving it the game and telling it whether it is Red or Yellow.
@@ -14,6 +51,10 @@ public class MyAgent2 extends Agent
     public MyAgent2(Connect4Game game, boolean iAmRed) {
         super(game, iAmRed);
         r = new Random();
+        for (int i = 0; i < completes.length; i++) {
+            completes[i] = new BitSet();
+            setsUp[i] = new BitSet();
+        }
     }
     
     /**
@@ -36,9 +77,14 @@ public class MyAgent2 extends Agent
      * 
      */
     public void move() {
-        if ( iCanWin() > -1 )
+        int solvedMove = solveEndgame();
+        if (solvedMove > -1)
+        {
+            moveOnColumn(solvedMove);
+        }
+        else if ( iCanWin() > -1 )
         {
-            moveOnColumn( iCanWin() );
+            moveOnColumn( iCanWin() );  // answered from the analysis made by the first call
         }
         else if ( theyCanWin(0, 0, false) > -1)
         {
@@ -50,40 +96,173 @@ public class MyAgent2 extends Agent
         }                
     }
 
+    /**
+     * Sets the number of empty slots at or below which the agent always solves the position
+     * exactly instead of using its heuristics.
+     * 
+     * @param endgameThreshold the number of empty slots; 0 to solve only when a probe succeeds.
+     */
+    public void setEndgameThreshold(int endgameThreshold) {
+        this.endgameThreshold = Math.max(0, endgameThreshold);
+    }
+    
+    /**
+     * Get the number of empty slots at or below which the agent always solves the position.
+     * 
+     * @return the endgame threshold.
+     */
+    public int getEndgameThreshold() {
+        return endgameThreshold;
+    }
+    
+    /**
+     * Sets how many nodes a probe may search. Above the endgame threshold, and at or below
+     * setProbeEmptySlots(...), the agent still tries to solve each position, but gives up and
+     * falls back to its heuristics once the probe has searched this many nodes.
+     * 
+     * @param probeNodeLimit the node limit, or 0 to never probe.
+     */
+    public void setProbeNodeLimit(long probeNodeLimit) {
+        this.probeNodeLimit = Math.max(0, probeNodeLimit);
+    }
+    
+    /**
+     * Sets the number of empty slots at or below which the agent starts probing. With more
+     * empty slots than this a probe would almost never finish, so the agent does not try.
+     * 
+     * @param probeEmptySlots the number of empty slots; 0 to never probe.
+     */
+    public void setProbeEmptySlots(int probeEmptySlots) {
+        this.probeEmptySlots = Math.max(0, probeEmptySlots);
+    }
+    
+    /**
+     * Get the number of empty slots there were when the solver last took over from the
+     * heuristics.
+     * 
+     * @return the number of empty slots at the hand-off, or -1 if the solver has not played yet.
+     */
+    public int getHandOffEmptySlots() {
+        return handOff;
+    }
+    
+    /**
+     * Get the number of nodes searched by the solver, including failed probes.
+     * 
+     * @return the solver's node count.
+     */
+    public long getSolverNodes() {
+        return solverNodes;
+    }
+    
+    /**
+     * Get the time spent by the solver, including failed probes.
+     * 
+     * @return the solver's time in nanoseconds.
+     */
+    public long getSolverNanos() {
+        return solverNanos;
+    }
+    
+    /**
+     * Get the number of nodes the solver searches per second, over all moves so far.
+     * 
+     * @return the solver's node rate, or 0 if it has not searched yet.
+     */
+    public double getSolverNodesPerSecond() {
+        if (solverNanos == 0) {
+            return 0;
+        }
+        return solverNodes * 1e9 / solverNanos;
+    }
+    
+    /**
+     * Get the solver's work so far: its nodes, its time in milliseconds, whether it took over
+     * from the heuristics and, if it did, the number of empty slots at the hand-off.
+     * 
+     * @return the solver's counts.
+     */
+    public Map<String, Long> getCounters() {
+        Map<String, Long> counters = new LinkedHashMap<>();
+        counters.put("solver nodes", solverNodes);
+        counters.put("solver ms", solverNanos / 1000000);
+        counters.put("solver hand-offs", handOff > -1 ? 1L : 0L);
+        if (handOff > -1) {
+            counters.put("empty slots at hand-off", (long) handOff);    // left out otherwise, so it averages over hand-offs only
+        }
+        return counters;
+    }
+
+    /**
+     * Solves the current position exactly if it is close enough to the end of the game, or if
+     * a probe limited to probeNodeLimit nodes manages to solve it anyway. Positions with more
+     * than probeEmptySlots empty slots are not probed.
+     * @return the column of the best move, or -1 if the position was not solved.
+     */
+    private int solveEndgame() {
+        int emptySlots = myGame.getColumnCount() * myGame.getRowCount() - myGame.getMoveCount();
+        boolean probe = emptySlots > endgameThreshold;
+        if (probe && (probeNodeLimit == 0 || emptySlots > probeEmptySlots)) {
+            solving = false;
+            return -1;
+        }
+        if (solver == null) {
+            solver = new AlphaBetaSearch(myGame, iAmRed);
+            solver.setTranspositionTable(TranspositionTable.getShared());
+            solver.setEvaluation(false);   // every search reaches the end of the game, so no position needs a heuristic score
+        } else {
+            solver.setPosition(myGame, iAmRed);
+        }
+        solver.setNodeLimit(probe ? probeNodeLimit : Long.MAX_VALUE);
+        // a probe gives up at the time budget; a position below the threshold is always solved
+        solver.setDeadline(probe ? getMoveDeadline() : Long.MAX_VALUE);
+        long start = System.nanoTime();
+        int column = solver.search(emptySlots);   // searching every empty slot reaches the end of the game
+        solverNanos += System.nanoTime() - start;
+        solverNodes += solver.getNodes();
+        if (solver.wasStopped() || column == -1) {
+            solving = false;
+            return -1;
+        }
+        if (!solving) {
+            handOff = emptySlots;
+            solving = true;
+        }
+        return column;
+    }
+
     /**
      * Returns the column index in which the best available move can be made.
      * @return returns the column index in which the best available move can be made.
      */
     public int bestMove() {
         int longest = 0; //The longest current sequence of consecutive tokens - updated as we iterate through the columns.
-        int bestMove = randomMove();
+        int bestMove = -1;
         int count = 0;
         int column = myGame.getColumnCount();
-        ArrayList<Integer> warningList = wouldGiveWinningMove();
-        for (int i = 0; i < column; i++) {
-            if ( getLowestEmptyIndex(i) > -1 && !warningList.contains(i) ) {
+        analyze();
+        for (int i = safe.nextSetBit(0); i > -1; i = safe.nextSetBit(i + 1)) {
+            int length = consecutiveTokens(i, iAmRed, 0);
+            if (length > longest) {
+                longest = length;
+                count = streakCount;
+                bestMove = i;
+            } else if (length == longest && streakCount > count) {
+                count = streakCount;
+                bestMove = i;
+            } else if (length == longest && streakCount == count && (bestMove == -1 || Math.abs(column / 2 - i) < Math.abs(column / 2 - bestMove))) {
+                bestMove = i;
+            }
+        }
 
-                Integer[] current = consecutiveTokens(i, iAmRed, 0);
-                if (current[0] > longest) {
-                    longest = current[0];
-                    count = current[1];
-                    bestMove = i;
-                } else if (current[0] == longest && current[1] > count) {
-                    count = current[1];
-                    bestMove = i;
-                } else if (current[0] == longest && current[1] == count && Math.abs(column / 2 - i) < Math.abs(column / 2 - bestMove)) {
+        // if every open column gives the opponent a winning move, giving one is inevitable: play nearest the center.
+        if (bestMove == -1) {
+            for (int i = 0; i < column; i++) {
+                if (getLowestEmptyIndex(i) > -1 && (bestMove == -1 || Math.abs(column / 2 - i) < Math.abs(column / 2 - bestMove))) {
                     bestMove = i;
                 }
             }
         }
-
-        // if randomMove is necessary, make sure that it doesn't leave the opponent with a winning move.
-        // loop included to prevent infinite while loop if giving winning move is inevitable.
-        int loop = 0;
-        while (loop < 100 && ( warningList.contains(bestMove) || theyCanWin(0, 1, false) == bestMove)) {
-            bestMove = randomMove();
-            loop++;
-        }
         return bestMove;
     }
 
@@ -95,15 +274,102 @@ public class MyAgent2 extends Agent
      * NB we can call the .contains() method on the ArrayList.
      */
     public ArrayList<Integer> wouldGiveWinningMove() {
+        analyze();
         ArrayList<Integer> doNotPlace = new ArrayList<>();
+        for (int i = unsafe.nextSetBit(0); i > -1; i = unsafe.nextSetBit(i + 1)) {
+            doNotPlace.add(i);
+        }
+        return doNotPlace;
+    }
+
+    /**
+     * Checks whether placing a token in a column would leave the opponent with a winning move
+     * in the slot above. Unlike wouldGiveWinningMove(), this creates no objects.
+     *
+     * @param column the column to check.
+     * @return true if playing the column would give the opponent a winning move.
+     */
+    public boolean givesWinningMove(int column) {
+        analyze();
+        return unsafe.get(column);
+    }
+
+    /**
+     * Checks whether a column is open and would not give the opponent a winning move.
+     *
+     * @param column the column to check.
+     * @return true if the column is safe to play.
+     */
+    public boolean isSafeColumn(int column) {
+        analyze();
+        return safe.get(column);
+    }
+
+    /**
+     * Works out the threats of the current position, unless they are already known. For each
+     * color and for the lowest empty slot (testRow 0) and the slot above it (testRow 1) of every
+     * column, this finds whether a token there would complete a line or set up a winning move,
+     * and from that which columns are safe to play.
+     */
+    private void analyze() {
+        if (analyzedMoves == myGame.getMoveCount() && analyzedHash == myGame.getHash()) {
+            return;
+        }
+        if (!linesLookedUp) {
+            lines = WinLines.get(myGame);
+            linesLookedUp = true;
+        }
+        int winLength = myGame.getWinLength();
+        for (int set = 0; set < completes.length; set++) {
+            boolean color = set < 2 ? iAmRed : !iAmRed;
+            int testRow = set % 2;
+            completes[set].clear();
+            setsUp[set].clear();
+            for (int i = 0; i < myGame.getColumnCount(); i++) {
+                int j = getLowestEmptyIndex(i) - testRow;
+                if (j < 0) {
+                    continue;
+                }
+                int length = -1;    // the streak a token here would make, once worked out
+                boolean completesLine;
+                if (lines != null) {
+                    completesLine = lines.completesLine(myGame, i, j, color);
+                } else {
+                    // without a line table, a token completes a line when it makes a streak long enough to win
+                    length = consecutiveTokens(i, color, testRow);
+                    completesLine = length >= winLength - 1;
+                }
+                if (completesLine) {
+                    completes[set].set(i);
+                    continue;
+                }
+                if (length == -1) {
+                    length = consecutiveTokens(i, color, testRow);
+                }
+                if (length == winLength - 2 && (streakFillable == 2 || (streakCount > 1 && streakFillable == 1))) {
+                    // two consecutive tokens with enough empty slots around them to potentially win (and those slots can be filled), OR
+                    // more than 1 consecutive tokens streak at the same slot, and one of those slots can be filled
+                    setsUp[set].set(i);
+                }
+            }
+        }
+        analyzedMoves = myGame.getMoveCount();
+        analyzedHash = myGame.getHash();
+        unsafe.clear();
+        safe.clear();
         for (int i = 0; i < myGame.getColumnCount(); i++) {
             // Loop the starting column, so that it will check all the columns instead of only the first one.
-            if (theyCanWin(i, 1, false) > -1) {
+            int dangerous = theyCanWin(i, 1, false);
+            if (dangerous > -1) {
                 // If the opponent can win, when the lowest empty slot of the column is one slot higher, then it's dangerous.
-                doNotPlace.add(theyCanWin(i, 1, false));
+                unsafe.set(dangerous);
+            }
+        }
+        for (int i = 0; i < myGame.getColumnCount(); i++) {
+            if (getLowestEmptyIndex(i) > -1 && !unsafe.get(i)) {
+                safe.set(i);
             }
         }
-        return doNotPlace;
     }
     
     /**
@@ -130,20 +396,7 @@ public class MyAgent2 extends Agent
      * @param columnNumber The column into which to drop the token.
      */
     public void moveOnColumn(int columnNumber) {
-        int lowestEmptySlotIndex = getLowestEmptyIndex(myGame.getColumn(columnNumber));   // Find the top empty slot in the column
-                                                                                          // If the column is full, lowestEmptySlot will be -1
-        if (lowestEmptySlotIndex > -1)  // if the column is not full
-        {
-            Connect4Slot lowestEmptySlot = myGame.getColumn(columnNumber).getSlot(lowestEmptySlotIndex);  // get the slot in this column at this index
-            if (iAmRed) // If the current agent is the Red player...
-            {
-                lowestEmptySlot.addRed(); // Place a red token into the empty slot
-            }
-            else // If the current agent is the Yellow player (not the Red player)...
-            {
-                lowestEmptySlot.addYellow(); // Place a yellow token into the empty slot
-            }
-        }
+        myGame.getColumn(columnNumber).drop(iAmRed);    // Drop a token of my color; if the column is full, nothing changes
     }
 
     /**
@@ -153,15 +406,7 @@ public class MyAgent2 extends Agent
      * @return the index of the top empty slot in a particular column; -1 if the column is already full.
      */
     public int getLowestEmptyIndex(Connect4Column column) {
-        int lowestEmptySlot = -1;
-        for  (int i = 0; i < column.getRowCount(); i++)
-        {
-            if (!column.getSlot(i).getIsFilled())
-            {
-                lowestEmptySlot = i;
-            }
-        }
-        return lowestEmptySlot;
+        return column.lowestEmptyIndex();
     }
 
     /**
@@ -231,26 +476,23 @@ public class MyAgent2 extends Agent
      * -1 if no such move exists.
      */
     public int winningMoveAvailable(boolean color, int colIndex, int slotIndex, boolean thisMove){
-        int winningMove = -1;
-        for (int i = colIndex; i < myGame.getColumnCount(); i++){
-            int j = getLowestEmptyIndex(i) - slotIndex;
-            if (j > -1) {
-                if (consecutiveTokens(i, color, slotIndex)[0] >= 3) {
-                    // if there is a string of consecutive tokens that is three (or two instances of two tokens separated by an empty slot)
-                    return i;
-                    // If not, check if the move AFTER this one (!thisMove) could set up a winning move
-                    // e.g., there's two consecutive tokens with enough empty slots around them to potentially win (and those slots can be filled), OR
-                    // there's more than 1 consecutive tokens streak at the same slot, and one of those slots can be filled
-                } else if (!thisMove && consecutiveTokens(i, color, slotIndex)[0] == 2 && (consecutiveTokens(i, color, slotIndex)[2] == 2 ||
-                        (consecutiveTokens(i, color, slotIndex)[1] > 1 && consecutiveTokens(i, color, slotIndex)[2] == 1))) {
-                    winningMove = i;
-                }
+        analyze();
+        int set = (color == iAmRed ? 0 : 2) + slotIndex;
+        // if there is a string of consecutive tokens that is three (or two instances of two tokens separated by an empty slot)
+        int winningMove = completes[set].nextSetBit(colIndex);
+        if (winningMove > -1) {
+            return winningMove;
+        }
+        // If not, check if the move AFTER this one (!thisMove) could set up a winning move
+        if (!thisMove) {
+            winningMove = setsUp[set].previousSetBit(myGame.getColumnCount() - 1);
+            if (winningMove < colIndex) {
+                winningMove = -1;
             }
         }
         if (color == iAmRed && winningMove > -1) {
-            ArrayList<Integer> warningList = wouldGiveWinningMove();
             // To make sure that this move (which would make me win next turn) won't make the opponent win immediately
-            if (warningList.contains(winningMove) || theyCanWin(0, 0, true) > -1) {
+            if (unsafe.get(winningMove) || theyCanWin(0, 0, true) > -1) {
                 // If this move will make the opponent win immediately, don't place the token here.
                 winningMove = -1;
             }
@@ -259,74 +501,58 @@ public class MyAgent2 extends Agent
     }
 
     /**
-     * Returns an array of three integers indicating, if a token is placed in a slot:
-     * 1. How long the consecutive token streak would be
-     * 2. How many consecutive token streaks with this length exist for the particular slot
-     * 3. How many open slots adjacent to the consecutive token streak would be fillable.
+     * Returns how long the consecutive token streak would be if a token is placed in a slot.
+     * Two more results are left in fields, so that no array has to be allocated:
+     * streakCount, how many consecutive token streaks with this length exist for the slot, and
+     * streakFillable, how many open slots adjacent to the streak would be fillable.
      * @param columnIndex The column index that is being tested.
      * @param color The color being tested. Red == true, Yellow == false.
      * @param testRow the row being tested, which is passed 0 for lowest and 1 for the slot above it.
-     * @return an array of three integers, the first is the length of consecutive tokens, the second is
-     * the number of consecutive token streaks of this length, and the third is the number of adjacent
-     * slots which are fillable (0, 1, or 2)
+     * @return the length of consecutive tokens.
      */
-    private Integer[] consecutiveTokens(int columnIndex, boolean color, int testRow) {
+    private int consecutiveTokens(int columnIndex, boolean color, int testRow) {
         int longest = 0; // length of the longest consecutive token streak
         int count = 0; // number of largest consecutive token streak
         int numberFillable = 0; // number of adjacent slots which are fillable (0, 1, or 2)
-        for (int i = 1; i <= 4; i++) {
+        for (int[] direction : DIRECTIONS) {
             // count tokens in each of the four directions
-            int length = consecutiveTokensLength(columnIndex, color, i, testRow)[0];
+            int length = consecutiveTokensLength(columnIndex, color, direction, testRow);
             if (length > longest) {
                 // if current length is longer, update the longest, count, and numberFillable.
                 longest = length;
                 count = 1;
-                numberFillable = consecutiveTokensLength(columnIndex, color, i, testRow)[1];
+                numberFillable = runFillable;
             }
             if (longest != 0 && length == longest) {
                 // if current length is same as longest, increase count by 1, make the numberFillable be the larger one.
                 count++;
-                numberFillable = Math.max(consecutiveTokensLength(columnIndex, color, i, testRow)[1], numberFillable);
+                numberFillable = Math.max(runFillable, numberFillable);
             }
         }
-        return new Integer[]{longest, count, numberFillable};
+        streakCount = count;
+        streakFillable = numberFillable;
+        return longest;
 
     }
 
     /**
-     * Returns an array of two integers indicating, if a token is placed in a slot:
-     * 1. How long the consecutive token streak would be
-     * 2. How many open slots adjacent to the consecutive token streak would be fillable.
+     * Returns how long the consecutive token streak in one direction would be if a token is
+     * placed in a slot. How many open slots adjacent to the streak would be fillable (0, 1, or
+     * 2) is left in the field runFillable.
      * @param columnIndex The column index that is being tested.
      * @param color The color being tested. Red == true, Yellow == false.
-     * @param direction There are four possible directions in which consecutive tokens can be aligned.
+     * @param direction The column and row steps of one of the four directions in which consecutive tokens can be aligned.
      * @param testRow the row being tested, which is passed 0 for lowest and 1 for the slot above it.
-     * @return an array of two integers, the first is the length of consecutive tokens, the second is
-     * the number of adjacent slots which are fillable (0, 1, or 2);
+     * @return the length of consecutive tokens.
      */
-    private Integer[] consecutiveTokensLength(int columnIndex, boolean color, int direction, int testRow) {
-        int x = 0;
-        int y = 0;
-        if (direction == 1) {
-            // vertical
-            y = 1;
-        } else if (direction == 2) {
-            // horizontal
-            x = 1;
-        } else if (direction == 3) {
-            // upper-left lower-right descending
-            x = 1;
-            y = 1;
-        } else {
-            // lower-left upper-right ascending
-            x = 1;
-            y = -1;
-        }
+    private int consecutiveTokensLength(int columnIndex, boolean color, int[] direction, int testRow) {
+        int x = direction[0];
+        int y = direction[1];
 
         int length = 0; // how many adjacent slots are the same color
         int numberFillable = 0; // how many open slots adjacent to the consecutive token streak are currently fillable
-        Integer[] directionMultiplier = new Integer[]{1, -1}; // multiply by one if we are moving x or y in a positive direction or -1 if negative
-        for (int side : directionMultiplier) {
+        for (int side = 1; side >= -1; side -= 2) {
+            // multiply by one if we are moving x or y in a positive direction or -1 if negative
             int i = 1;
             boolean finished = false;
             while (!finished) {
@@ -349,7 +575,8 @@ public class MyAgent2 extends Agent
                 i = i + 1; // If not finished, then it will check one slot further.
             }
         }
-        return new Integer[] {length, numberFillable};
+        runFillable = numberFillable;
+        return length;
     }
 
     /**
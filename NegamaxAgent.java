@@ -0,0 +1,111 @@
+/**
+ * An agent that looks ahead with a negamax search with alpha-beta pruning.
+ * 
+ * The agent searches a fixed number of plies, stopping early if the search visits more than
+ * a given number of nodes. It plays any immediate win, never misses a forced win or loss
+ * within its depth, and otherwise prefers central columns.
+ * 
+ * Search results are cached in a TranspositionTable. Unless the agent is given its own table,
+ * it uses the table shared by all agents, so results carry over between moves and between
+ * the games of a GameSimulator run.
+ * 
+ * While the position is in an OpeningBook, the agent plays the book move without searching.
+ */
+public class NegamaxAgent extends Agent
+{
+    private static final int DEFAULT_DEPTH = 10;
+    private static final long DEFAULT_NODE_LIMIT = 2000000;
+    
+    private int depth;  // the number of plies to search
+    private long nodeLimit; // the maximum number of nodes to visit per move
+    private TranspositionTable table;   // the cache of search results
+    private OpeningBook book = OpeningBook.getShared();   // the book consulted before searching, or null
+    private AlphaBetaSearch search; // the search, kept from move to move so its arrays are reused
+    
+    /**
+     * Constructs a new agent with the default depth and node limit.
+     * 
+     * @param game The game the agent will be playing.
+     * @param iAmRed True if the agent is Red, False if the agent is Yellow.
+     */
+    public NegamaxAgent(Connect4Game game, boolean iAmRed)
+    {
+        this(game, iAmRed, DEFAULT_DEPTH, DEFAULT_NODE_LIMIT);
+    }
+    
+    /**
+     * Constructs a new agent with the given depth and node limit.
+     * 
+     * @param game The game the agent will be playing.
+     * @param iAmRed True if the agent is Red, False if the agent is Yellow.
+     * @param depth The number of plies to search.
+     * @param nodeLimit The maximum number of nodes to visit per move.
+     */
+    public NegamaxAgent(Connect4Game game, boolean iAmRed, int depth, long nodeLimit)
+    {
+        this(game, iAmRed, depth, nodeLimit, TranspositionTable.getShared());
+    }
+    
+    /**
+     * Constructs a new agent with the given depth, node limit and transposition table.
+     * 
+     * @param game The game the agent will be playing.
+     * @param iAmRed True if the agent is Red, False if the agent is Yellow.
+     * @param depth The number of plies to search.
+     * @param nodeLimit The maximum number of nodes to visit per move.
+     * @param table The table caching search results; it may be shared with other agents.
+     */
+    public NegamaxAgent(Connect4Game game, boolean iAmRed, int depth, long nodeLimit, TranspositionTable table)
+    {
+        super(game, iAmRed);
+        this.depth = depth;
+        this.nodeLimit = nodeLimit;
+        this.table = table;
+    }
+    
+    /**
+     * Searches the current position and drops a token into the best column found.
+     */
+    public void move()
+    {
+        int bookMove = book == null ? -1 : book.lookup(myGame);
+        if (bookMove != -1 && !myGame.getColumn(bookMove).getIsFull())
+        {
+            myGame.getColumn(bookMove).drop(iAmRed);
+            return;
+        }
+        if (search == null)
+        {
+            search = new AlphaBetaSearch(myGame, iAmRed);
+        }
+        else
+        {
+            search.setPosition(myGame, iAmRed);
+        }
+        search.setNodeLimit(nodeLimit);
+        search.setTranspositionTable(table);
+        int column = search.search(depth);
+        myGame.getColumn(column).drop(iAmRed);
+    }
+    
+    /**
+     * Sets the opening book played from while the position is in it. By default the agent
+     * uses the book in OpeningBook.DEFAULT_FILE, if there is one.
+     * 
+     * @param book the book to use, or null to always search.
+     */
+    public void setOpeningBook(OpeningBook book)
+    {
+        this.book = book;
+    }
+    
+    /**
+     * Returns the name of this agent.
+     * 
+     * @return the agent's name
+     */
+    public String getName()
+    {
+        return "Negamax Agent";
+    }
+}
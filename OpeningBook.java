@@ -0,0 +1,224 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A precomputed table of the best move in every early position of the standard 7x6 game.
+ * 
+ * The book is built once by running this class as a program, which searches every position
+ * reachable within a number of plies and writes the best moves to a file. The file is a
+ * sorted array of longs, one per position, so an agent can look moves up by binary search
+ * straight from a memory-mapped copy of it: opening a book takes no time and the entries
+ * never enter the heap.
+ * 
+ * Positions are stored from the point of view of the player to move (their tokens count as
+ * red) and under the canonical key of Connect4Encoding, so a position, its mirror image and
+ * the same position with the colors swapped all share one entry.
+ * 
+ * Your agent may use this class.
+ */
+public class OpeningBook
+{
+    public static final String DEFAULT_FILE = "opening.book";   // the file getShared() opens
+    private static final long MAGIC = 0x43344F50454E4B31L;  // "C4OPENK1", the first long of every book file
+    private static final int COLUMNS = 7, ROWS = 6, WIN_LENGTH = 4; // the only board size a book covers
+    private static final long KEY_MASK = (1L << 56) - 1;    // the key bits of an entry; the top byte holds the move
+    private static OpeningBook shared;  // the book in DEFAULT_FILE, opened on first use
+    private static boolean sharedOpened;    // whether opening the shared book has been tried
+    
+    private final LongBuffer entries;   // the sorted entries, read from the mapped file
+    
+    /**
+     * Opens a book file. The file is mapped into memory, not read.
+     * 
+     * @param file the book file.
+     * @throws IOException if the file cannot be read or is not a book.
+     */
+    public OpeningBook(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            LongBuffer longs = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asLongBuffer();
+            if (longs.limit() < 1 || longs.get(0) != MAGIC)
+            {
+                throw new IOException(file + " is not an opening book");
+            }
+            longs.position(1);
+            entries = longs.slice();
+        }
+    }
+    
+    /**
+     * Returns the book in DEFAULT_FILE in the working directory, opening it on first use.
+     * 
+     * @return the shared book, or null if there is no readable book file.
+     */
+    public static synchronized OpeningBook getShared()
+    {
+        if (!sharedOpened)
+        {
+            sharedOpened = true;
+            Path file = Paths.get(DEFAULT_FILE);
+            if (Files.isReadable(file))
+            {
+                try
+                {
+                    shared = new OpeningBook(file);
+                }
+                catch (IOException e)
+                {
+                    shared = null;  // a damaged book is the same as no book
+                }
+            }
+        }
+        return shared;
+    }
+    
+    /**
+     * Get the number of positions in the book.
+     * 
+     * @return the number of entries.
+     */
+    public int size()
+    {
+        return entries.limit();
+    }
+    
+    /**
+     * Looks up the best move for the player to move.
+     * 
+     * @param game the game to look up; only 7x6 games with a win length of 4 are in the book.
+     * @return the best column, or -1 if the position is not in the book.
+     */
+    public int lookup(Connect4Game game)
+    {
+        if (game.getColumnCount() != COLUMNS || game.getRowCount() != ROWS || game.getWinLength() != WIN_LENGTH)
+        {
+            return -1;
+        }
+        long key = Connect4Encoding.encodeForMover(game);
+        if (key == -1)
+        {
+            return -1;
+        }
+        long canonical = Math.min(key, Connect4Encoding.mirror(key, COLUMNS, ROWS));
+        int low = 0, high = entries.limit() - 1;
+        while (low <= high)
+        {
+            int middle = (low + high) >>> 1;
+            long entry = entries.get(middle);
+            long entryKey = entry & KEY_MASK;
+            if (entryKey < canonical)
+            {
+                low = middle + 1;
+            }
+            else if (entryKey > canonical)
+            {
+                high = middle - 1;
+            }
+            else
+            {
+                int column = (int) (entry >>> 56);
+                return canonical == key ? column : COLUMNS - 1 - column;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Builds a book and writes it to a file.
+     * 
+     * @param file the file to write.
+     * @param plies the book holds every position with at most this many tokens.
+     * @param depth the number of plies to search each position.
+     * @return the number of positions written.
+     * @throws IOException if the file cannot be written.
+     */
+    public static int build(Path file, int plies, int depth) throws IOException
+    {
+        Map<Long, Integer> moves = new HashMap<>();
+        Connect4Game game = new Connect4Game(COLUMNS, ROWS, WIN_LENGTH);
+        game.setRedPlayedFirst(true);
+        TranspositionTable table = new TranspositionTable(256);
+        addPositions(game, plies, depth, table, moves);
+        long[] keys = new long[moves.size()];
+        int n = 0;
+        for (long key : moves.keySet())
+        {
+            keys[n++] = key;
+        }
+        Arrays.sort(keys);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile()))))
+        {
+            out.writeLong(MAGIC);
+            for (long key : keys)
+            {
+                out.writeLong(key | ((long) moves.get(key) << 56));
+            }
+        }
+        return keys.length;
+    }
+    
+    /**
+     * Builds a book from the command line.
+     * 
+     * Usage: java OpeningBook [file] [plies] [depth]. The defaults are opening.book, 6 plies
+     * and a 12 ply search, which takes about a minute.
+     * 
+     * @param args the file, number of plies and search depth.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        Path file = Paths.get(args.length > 0 ? args[0] : DEFAULT_FILE);
+        int plies = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 12;
+        long start = System.nanoTime();
+        int size = build(file, plies, depth);
+        System.out.printf("Wrote %d positions to %s in %.1f s%n", size, file, (System.nanoTime() - start) / 1e9);
+    }
+    
+    /**
+     * Searches the current position and every position below it, down to the given number of
+     * tokens, skipping positions already in the book.
+     */
+    private static void addPositions(Connect4Game game, int plies, int depth, TranspositionTable table,
+        Map<Long, Integer> moves)
+    {
+        if (game.getWinner() != 'N' || game.boardFull())
+        {
+            return;
+        }
+        long key = Connect4Encoding.encodeForMover(game);
+        long canonical = Math.min(key, Connect4Encoding.mirror(key, COLUMNS, ROWS));
+        if (moves.containsKey(canonical))
+        {
+            return; // already searched through another move order or as a mirror image
+        }
+        AlphaBetaSearch search = new AlphaBetaSearch(game, game.isRedTurn());
+        search.setTranspositionTable(table);
+        int column = search.search(depth);
+        moves.put(canonical, canonical == key ? column : COLUMNS - 1 - column);
+        if (game.getMoveCount() < plies)
+        {
+            for (int i = 0; i < COLUMNS; i++)
+            {
+                if (game.play(i) != -1)
+                {
+                    addPositions(game, plies, depth, table, moves);
+                    game.undo();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,412 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * An agent that runs Monte Carlo tree search on several threads that share one tree.
+ * 
+ * The tree is laid out like MctsAgent's, in primitive arrays, but the visit and score counts
+ * are atomic arrays and new nodes are claimed with an atomic counter, so no thread ever takes
+ * a lock. A node is expanded by whichever thread first claims it with a compare-and-set; other
+ * threads reaching it meanwhile just run their playout from there.
+ * 
+ * While a thread walks down the tree, every node it passes counts as a few extra lost visits
+ * ("virtual loss") until its playout result is backed up. This makes the other threads prefer
+ * different branches instead of all exploring the same line.
+ * 
+ * Every thread plays its playouts on its own copy of the board. The tree is rebuilt for every
+ * move, reusing the same arrays. The helper threads are shared by all agents and are let go
+ * once they have been idle for a while.
+ */
+public class ParallelMctsAgent extends Agent
+{
+    private static final long DEFAULT_MOVE_BUDGET = 100;    // milliseconds per move if no other budget is set
+    private static final int DEFAULT_CAPACITY = 1 << 20;    // the number of nodes the tree can hold
+    private static final int UNTIMED_PLAYOUT_LIMIT = 100000;    // the playouts per move when neither a time budget nor a playout limit is set
+    private static final double EXPLORATION = 1.4;  // the weight of the exploration term of the UCT formula
+    private static final int VIRTUAL_LOSS = 3;  // the lost visits added to a node while a thread is below it
+    private static final int UNEXPANDED = -1, EXPANDING = -2;   // child counts of nodes without children yet
+    private static final byte OPEN = 0, WON = 1, DRAWN = 2; // how the game stands after a node's move
+    private static ExecutorService helpers; // the helper threads of all agents, created on first use
+    
+    private int threads;    // the number of threads searching, including the agent's own
+    private int capacity;   // the number of nodes the tree can hold
+    private int[] firstChild, column;   // per node: where its children start and its move
+    private byte[] outcome; // per node: OPEN, WON or DRAWN
+    private AtomicIntegerArray childCount;  // per node: the number of children, UNEXPANDED or EXPANDING
+    private AtomicIntegerArray visits, score;   // per node: its visits and twice its wins plus its draws
+    private AtomicInteger nodeCount = new AtomicInteger();  // the number of nodes claimed
+    private int playoutLimit;   // the maximum number of playouts per move, 0 if none was set
+    private int lastPlayouts;   // the number of playouts made by all threads during the last move
+    private long totalPlayouts, totalNanos; // the playouts made and time spent during all moves so far
+    
+    /**
+     * Constructs a new agent that uses every available core and a budget of 100 milliseconds
+     * per move.
+     * 
+     * @param game The game the agent will be playing.
+     * @param iAmRed True if the agent is Red, False if the agent is Yellow.
+     */
+    public ParallelMctsAgent(Connect4Game game, boolean iAmRed)
+    {
+        this(game, iAmRed, Runtime.getRuntime().availableProcessors(), DEFAULT_MOVE_BUDGET, DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * Constructs a new agent with the given number of threads, time budget and tree size.
+     * 
+     * @param game The game the agent will be playing.
+     * @param iAmRed True if the agent is Red, False if the agent is Yellow.
+     * @param threads The number of threads to search with, including the agent's own.
+     * @param moveBudget The time allowed per move in milliseconds, or 0 for no limit, in which
+     * case a move ends after 100000 playouts unless a playout limit is set.
+     * @param capacity The number of nodes the tree can hold; once it is full, the tree stops
+     * growing but playouts go on.
+     */
+    public ParallelMctsAgent(Connect4Game game, boolean iAmRed, int threads, long moveBudget, int capacity)
+    {
+        super(game, iAmRed);
+        this.threads = Math.max(1, threads);
+        setMoveBudget(moveBudget);
+        this.capacity = Math.max(1 + game.getColumnCount(), capacity);
+        firstChild = new int[this.capacity];
+        column = new int[this.capacity];
+        outcome = new byte[this.capacity];
+        childCount = new AtomicIntegerArray(this.capacity);
+        visits = new AtomicIntegerArray(this.capacity);
+        score = new AtomicIntegerArray(this.capacity);
+    }
+    
+    /**
+     * Sets the maximum number of playouts per move, counted over all threads. The agent stops
+     * at whichever comes first, this limit or its time budget. Without a time budget the agent
+     * stops after 100000 playouts unless it is given a limit.
+     * 
+     * @param playoutLimit the maximum number of playouts.
+     */
+    public void setPlayoutLimit(int playoutLimit)
+    {
+        this.playoutLimit = Math.max(1, playoutLimit);
+    }
+    
+    /**
+     * Runs playouts on all threads until the time budget or the playout limit runs out, then
+     * drops a token into the column that was tried most often.
+     */
+    public void move()
+    {
+        long start = System.nanoTime();
+        long deadline = getMoveDeadline();
+        int limit = playoutLimit > 0 ? playoutLimit : deadline == Long.MAX_VALUE ? UNTIMED_PLAYOUT_LIMIT : Integer.MAX_VALUE;
+        nodeCount.set(1);
+        childCount.set(0, UNEXPANDED);
+        visits.set(0, 0);
+        score.set(0, 0);
+        outcome[0] = OPEN;
+        AtomicInteger playouts = new AtomicInteger();
+        synchronized (ParallelMctsAgent.class)
+        {
+            if (helpers == null && threads > 1)
+            {
+                helpers = Executors.newCachedThreadPool(runnable -> {
+                    Thread thread = new Thread(runnable, "ParallelMctsAgent helper");
+                    thread.setDaemon(true);    // never keep the program running after the game
+                    return thread;
+                });
+            }
+        }
+        Future<?>[] helperResults = new Future<?>[threads - 1];
+        for (int i = 0; i < helperResults.length; i++)
+        {
+            Worker worker = new Worker(System.nanoTime() + i);
+            helperResults[i] = helpers.submit(() -> worker.run(deadline, limit, playouts));
+        }
+        new Worker(System.nanoTime() - 1).run(deadline, limit, playouts);
+        for (int i = 0; i < helperResults.length; i++)
+        {
+            try
+            {
+                helperResults[i].get();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            catch (ExecutionException e)
+            {
+                throw new IllegalStateException("a helper thread failed", e.getCause());
+            }
+        }
+        int best = -1;
+        for (int child = firstChild[0]; child < firstChild[0] + childCount.get(0); child++)
+        {
+            if (best == -1 || visits.get(child) > visits.get(best))
+            {
+                best = child;
+            }
+        }
+        lastPlayouts = playouts.get();
+        totalPlayouts += lastPlayouts;
+        totalNanos += System.nanoTime() - start;
+        myGame.getColumn(column[best]).drop(iAmRed);
+    }
+    
+    /**
+     * Get the number of playouts made by all threads during the last move.
+     * 
+     * @return the number of playouts.
+     */
+    public int getLastPlayouts()
+    {
+        return lastPlayouts;
+    }
+    
+    /**
+     * Get the number of playouts made per second by all threads together, over all moves so
+     * far.
+     * 
+     * @return the playout rate, or 0 if the agent has not moved yet.
+     */
+    public double getPlayoutsPerSecond()
+    {
+        if (totalNanos == 0)
+        {
+            return 0;
+        }
+        return totalPlayouts * 1e9 / totalNanos;
+    }
+    
+    /**
+     * Get the agent's playouts in its game so far and their rate, for GameSimulator to report.
+     * The rate is only given once the agent has moved.
+     * 
+     * @return the number of playouts and the playouts per second.
+     */
+    public Map<String, Long> getCounters()
+    {
+        Map<String, Long> counters = new LinkedHashMap<>();
+        counters.put("playouts", totalPlayouts);
+        if (totalNanos > 0)
+        {
+            counters.put("playouts per second", Math.round(getPlayoutsPerSecond()));
+        }
+        return counters;
+    }
+    
+    /**
+     * Returns the name of this agent.
+     * 
+     * @return the agent's name
+     */
+    public String getName()
+    {
+        return "Parallel MCTS Agent";
+    }
+    
+    /**
+     * One thread's share of the search, with its own board, path and random numbers.
+     */
+    private class Worker
+    {
+        private final Connect4Game board;   // the position of the root, changed and restored during each iteration
+        private final int[] path;   // the nodes visited by the current iteration
+        private long random;    // the state of the random number generator used by playouts
+    
+        Worker(long seed)
+        {
+            board = new Connect4Game(myGame);
+            if (board.isRedTurn() != iAmRed)
+            {
+                board.setRedPlayedFirst(!board.getRedPlayedFirst());
+            }
+            path = new int[board.getColumnCount() * board.getRowCount() + 1];
+            random = seed | 1;
+        }
+    
+        /**
+         * Runs iterations until the deadline passes or the playout limit is reached. The first
+         * iteration always runs, so the root has been expanded when this returns.
+         * 
+         * @param deadline the System.nanoTime() value to stop at.
+         * @param limit the number of playouts to stop at.
+         * @param playouts the number of playouts made by all threads so far.
+         */
+        void run(long deadline, int limit, AtomicInteger playouts)
+        {
+            do
+            {
+                iterate();
+            }
+            while (playouts.incrementAndGet() < limit && System.nanoTime() < deadline);
+        }
+    
+        private void iterate()
+        {
+            int rootMoves = board.getMoveCount();
+            int node = 0;
+            int length = 0;
+            path[length++] = node;
+            visits.addAndGet(node, VIRTUAL_LOSS);
+            while (childCount.get(node) > 0 && outcome[node] == OPEN)
+            {
+                node = select(node);
+                board.play(column[node]);
+                path[length++] = node;
+                visits.addAndGet(node, VIRTUAL_LOSS);
+            }
+            if (outcome[node] == OPEN && childCount.get(node) == UNEXPANDED
+                && childCount.compareAndSet(node, UNEXPANDED, EXPANDING))
+            {
+                int count = expand(node);
+                if (count > 0)
+                {
+                    node = firstChild[node] + (int) ((nextRandom() >>> 33) % count);
+                    board.play(column[node]);
+                    path[length++] = node;
+                    visits.addAndGet(node, VIRTUAL_LOSS);
+                }
+            }
+            char winner;
+            if (outcome[node] == WON)
+            {
+                winner = board.getWinner();
+            }
+            else if (outcome[node] == DRAWN)
+            {
+                winner = 'N';
+            }
+            else
+            {
+                winner = playout();
+            }
+            // a node's score counts for the player who made the move into it
+            for (int i = length - 1; i >= 0; i--)
+            {
+                int n = path[i];
+                visits.addAndGet(n, 1 - VIRTUAL_LOSS);
+                if (winner == 'N')
+                {
+                    score.addAndGet(n, 1);
+                }
+                else if ((winner == 'R') == ((i % 2 == 1) == iAmRed))
+                {
+                    score.addAndGet(n, 2);
+                }
+            }
+            while (board.getMoveCount() > rootMoves)
+            {
+                board.undo();
+            }
+        }
+    
+        private int select(int node)
+        {
+            double logVisits = Math.log(Math.max(1, visits.get(node)));
+            int first = firstChild[node];
+            int last = first + childCount.get(node);
+            int best = -1;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int child = first; child < last; child++)
+            {
+                int n = visits.get(child);
+                if (n == 0)
+                {
+                    return child;
+                }
+                double value = score.get(child) / (2.0 * n) + EXPLORATION * Math.sqrt(logVisits / n);
+                if (value > bestValue)
+                {
+                    bestValue = value;
+                    best = child;
+                }
+            }
+            return best;
+        }
+    
+        /**
+         * Adds a node's children to the tree. The caller must have claimed the node by setting
+         * its child count to EXPANDING.
+         * 
+         * @return the number of children added, or 0 if the tree is full.
+         */
+        private int expand(int node)
+        {
+            int count = 0;
+            for (int c = 0; c < board.getColumnCount(); c++)
+            {
+                if (!board.getColumn(c).getIsFull())
+                {
+                    count++;
+                }
+            }
+            int first = nodeCount.getAndAdd(count);
+            if (first + count > capacity)
+            {
+                childCount.set(node, 0);    // the tree is full: this node stays a leaf for good
+                return 0;
+            }
+            int child = first;
+            for (int c = 0; c < board.getColumnCount(); c++)
+            {
+                if (board.getColumn(c).getIsFull())
+                {
+                    continue;
+                }
+                column[child] = c;
+                childCount.set(child, UNEXPANDED);
+                visits.set(child, 0);
+                score.set(child, 0);
+                if (board.isWinningMove(c))
+                {
+                    outcome[child] = WON;
+                }
+                else if (board.getMoveCount() + 1 == board.getColumnCount() * board.getRowCount())
+                {
+                    outcome[child] = DRAWN;
+                }
+                else
+                {
+                    outcome[child] = OPEN;
+                }
+                child++;
+            }
+            firstChild[node] = first;
+            childCount.set(node, count);    // publishes the children to the other threads
+            return count;
+        }
+    
+        private char playout()
+        {
+            int columns = board.getColumnCount();
+            int slots = columns * board.getRowCount();
+            while (board.getMoveCount() < slots)
+            {
+                int c = (int) ((nextRandom() >>> 33) % columns);
+                while (board.getColumn(c).getIsFull())
+                {
+                    c = c + 1 == columns ? 0 : c + 1;
+                }
+                board.play(c);
+                char winner = board.getWinner();
+                if (winner != 'N')
+                {
+                    return winner;
+                }
+            }
+            return 'N';
+        }
+    
+        private long nextRandom()
+        {
+            random ^= random << 13;
+            random ^= random >>> 7;
+            random ^= random << 17;
+            return random;
+        }
+    }
+}
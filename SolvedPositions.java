@@ -0,0 +1,314 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A database of positions whose game-theoretic result is known exactly, kept in a file so
+ * that solving work survives from one run of the program to the next.
+ * 
+ * Each position is stored with the result for the player to move: a win or loss and the
+ * number of plies until the game ends, or a draw. Results are given and returned as
+ * AlphaBetaSearch scores: WIN_SCORE minus the distance for a win, its negative for a loss and
+ * 0 for a draw.
+ * 
+ * The file is a sorted array of longs, one per position, which is memory-mapped when the
+ * database is opened and searched by binary search, so even a large database opens at once.
+ * Results recorded while the program runs are kept in memory and merged into the file by
+ * save(), which the shared databases also do when the program exits.
+ * 
+ * Positions are keyed like OpeningBook entries, so a position, its mirror image and the same
+ * position with the colors swapped share one entry. Only boards whose position keys fit in
+ * 56 bits, such as the standard 7x6 board, can be stored.
+ * 
+ * Your agent may use this class.
+ */
+public class SolvedPositions
+{
+    private static final long MAGIC = 0x4334534F4C564431L;  // "C4SOLVD1", the first long of every database file
+    private static final long KEY_MASK = (1L << 56) - 1;    // the key bits of an entry; the top byte holds the result
+    private static final Map<String, SolvedPositions> shared = new HashMap<>();   // the databases opened by getShared(...), by file name
+    
+    private final Path file;    // the file the database is kept in
+    private final int columns, rows, winLength; // the board the positions belong to
+    private LongBuffer entries; // the sorted entries of the mapped file
+    private final Map<Long, Integer> recorded = new HashMap<>();   // results recorded since the file was last written
+    
+    /**
+     * Opens a database file, or prepares to create it if it does not exist yet.
+     * 
+     * @param file the database file.
+     * @param columns the number of columns of the board.
+     * @param rows the number of rows of the board.
+     * @param winLength the number of tokens in a row needed to win.
+     * @throws IOException if the file exists but cannot be read, is not a database or holds
+     * positions of another board.
+     */
+    public SolvedPositions(Path file, int columns, int rows, int winLength) throws IOException
+    {
+        if (columns * (rows + 1) > 56)
+        {
+            throw new IllegalArgumentException("a " + columns + "x" + rows + " board is too large to store");
+        }
+        this.file = file;
+        this.columns = columns;
+        this.rows = rows;
+        this.winLength = winLength;
+        entries = Files.exists(file) ? map(file) : LongBuffer.allocate(0);
+    }
+    
+    /**
+     * Returns the database for a board size, kept in a file named after the board in the
+     * working directory (for example solved-7x6-4.positions). The database is opened on first
+     * use and saved when the program exits.
+     * 
+     * @param game a game on the board whose database is wanted.
+     * @return the shared database, or null if the board is too large or the file cannot be read.
+     */
+    public static synchronized SolvedPositions getShared(Connect4Game game)
+    {
+        String name = "solved-" + game.getColumnCount() + "x" + game.getRowCount() + "-" + game.getWinLength()
+            + ".positions";
+        if (!shared.containsKey(name))
+        {
+            SolvedPositions positions = null;
+            if (game.getColumnCount() * (game.getRowCount() + 1) <= 56)
+            {
+                try
+                {
+                    positions = new SolvedPositions(Paths.get(name), game.getColumnCount(), game.getRowCount(),
+                        game.getWinLength());
+                    SolvedPositions saved = positions;
+                    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                        try
+                        {
+                            saved.save();
+                        }
+                        catch (IOException e)
+                        {
+                            throw new UncheckedIOException(e);
+                        }
+                    }));
+                }
+                catch (IOException e)
+                {
+                    positions = null;   // an unreadable database is the same as none
+                }
+            }
+            shared.put(name, positions);
+        }
+        return shared.get(name);
+    }
+    
+    /**
+     * Looks up the result of a position.
+     * 
+     * @param game the position to look up.
+     * @return the score for the player to move, or Integer.MIN_VALUE if the position is not
+     * in the database.
+     */
+    public synchronized int lookup(Connect4Game game)
+    {
+        long key = keyOf(game);
+        if (key == -1)
+        {
+            return Integer.MIN_VALUE;
+        }
+        Integer score = recorded.get(key);
+        if (score != null)
+        {
+            return score;
+        }
+        int low = 0, high = entries.limit() - 1;
+        while (low <= high)
+        {
+            int middle = (low + high) >>> 1;
+            long entry = entries.get(middle);
+            long entryKey = entry & KEY_MASK;
+            if (entryKey < key)
+            {
+                low = middle + 1;
+            }
+            else if (entryKey > key)
+            {
+                high = middle - 1;
+            }
+            else
+            {
+                return toScore((byte) (entry >>> 56));
+            }
+        }
+        return Integer.MIN_VALUE;
+    }
+    
+    /**
+     * Records the exact result of a position. The result is only written to the file by the
+     * next save().
+     * 
+     * @param game the solved position.
+     * @param score the exact score for the player to move, as an AlphaBetaSearch score.
+     */
+    public synchronized void record(Connect4Game game, int score)
+    {
+        long key = keyOf(game);
+        if (key != -1)
+        {
+            recorded.put(key, toScore(toResult(score)));
+        }
+    }
+    
+    /**
+     * Get the number of positions in the database. A position recorded again since the last
+     * save() is counted twice.
+     * 
+     * @return the number of positions.
+     */
+    public synchronized int size()
+    {
+        return entries.limit() + recorded.size();
+    }
+    
+    /**
+     * Writes the database to its file, merging the results recorded since the last save into
+     * the ones already there. The file is replaced in one step, so a crash never leaves half
+     * a database behind.
+     * 
+     * @throws IOException if the file cannot be written.
+     */
+    public synchronized void save() throws IOException
+    {
+        if (recorded.isEmpty())
+        {
+            return;
+        }
+        long[] added = new long[recorded.size()];
+        int n = 0;
+        for (long key : recorded.keySet())
+        {
+            added[n++] = key;
+        }
+        Arrays.sort(added);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary))))
+        {
+            out.writeLong(MAGIC);
+            out.writeLong(boardId());
+            int i = 0, j = 0;
+            while (i < entries.limit() || j < added.length)
+            {
+                boolean oldLeft = i < entries.limit();
+                if (oldLeft && (j == added.length || (entries.get(i) & KEY_MASK) < added[j]))
+                {
+                    out.writeLong(entries.get(i++));
+                    continue;
+                }
+                if (oldLeft && (entries.get(i) & KEY_MASK) == added[j])
+                {
+                    i++;    // the new result replaces the old one
+                }
+                out.writeLong(added[j] | ((long) (toResult(recorded.get(added[j])) & 0xFF) << 56));
+                j++;
+            }
+        }
+        try
+        {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        entries = map(file);
+        recorded.clear();
+    }
+    
+    /**
+     * Maps a database file into memory and checks its header.
+     */
+    private LongBuffer map(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            LongBuffer longs = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asLongBuffer();
+            if (longs.limit() < 2 || longs.get(0) != MAGIC)
+            {
+                throw new IOException(path + " is not a solved position database");
+            }
+            if (longs.get(1) != boardId())
+            {
+                throw new IOException(path + " holds positions of another board");
+            }
+            longs.position(2);
+            return longs.slice();
+        }
+    }
+    
+    /**
+     * Packs the board size and win length into the second long of the file.
+     */
+    private long boardId()
+    {
+        return ((long) columns << 40) | ((long) rows << 20) | winLength;
+    }
+    
+    /**
+     * Computes the key of a position, or -1 if it belongs to another board or cannot be keyed.
+     */
+    private long keyOf(Connect4Game game)
+    {
+        if (game.getColumnCount() != columns || game.getRowCount() != rows || game.getWinLength() != winLength)
+        {
+            return -1;
+        }
+        long key = Connect4Encoding.encodeForMover(game);
+        if (key == -1)
+        {
+            return -1;
+        }
+        return Math.min(key, Connect4Encoding.mirror(key, columns, rows));
+    }
+    
+    /**
+     * Converts a score to the signed distance stored in the file: plies to a win, minus plies
+     * to a loss, or 0 for a draw.
+     */
+    private static byte toResult(int score)
+    {
+        if (score > 0)
+        {
+            return (byte) Math.min(127, AlphaBetaSearch.WIN_SCORE - score);
+        }
+        if (score < 0)
+        {
+            return (byte) -Math.min(127, AlphaBetaSearch.WIN_SCORE + score);
+        }
+        return 0;
+    }
+    
+    /**
+     * Converts a signed distance from the file back to a score.
+     */
+    private static int toScore(byte result)
+    {
+        if (result > 0)
+        {
+            return AlphaBetaSearch.WIN_SCORE - result;
+        }
+        if (result < 0)
+        {
+            return -AlphaBetaSearch.WIN_SCORE - result;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,172 @@
+import java.util.Arrays;
+
+/**
+ * A fixed-size cache of search results, keyed by position hash.
+ * 
+ * The table is two parallel long arrays: one holds the full 64-bit key of each entry and the
+ * other packs the entry's score, depth, bound type and best move into a single long, so no
+ * objects are created per entry. The key is stored XORed with the packed entry, so a lookup
+ * only matches when both longs were written by the same store. Entries are grouped in buckets of two. The first entry of a
+ * bucket is only replaced by a search that went at least as deep, and the second is always
+ * replaced, so deep results survive while recent shallow ones still get cached.
+ * 
+ * A table keeps its contents between searches, so one table can be reused for every move of a
+ * game and for every game of a GameSimulator run.
+ * 
+ * Several threads may use one table at the same time without locking. If two threads write
+ * the same entry at once, a reader sees either one of the two results or a key that does
+ * not match, never a mix of the two. The table keeps no counters of its own, so probing it
+ * writes nothing shared; AlphaBetaSearch counts the probes and hits of each search instead.
+ * 
+ * Your agent may use this class.
+ */
+public class TranspositionTable
+{
+    public static final int EXACT = 0;  // the stored score is the exact score of the position
+    public static final int LOWER_BOUND = 1;    // the position scores at least the stored score
+    public static final int UPPER_BOUND = 2;    // the position scores at most the stored score
+    public static final long NO_ENTRY = 0L; // returned by probe(...) when the position is not stored
+    
+    private static final long VALID = 1L << 63;    // set in every stored entry so it never equals NO_ENTRY
+    private static final int DEFAULT_MEGABYTES = 32;
+    private static TranspositionTable shared;   // the table used by agents that are not given one
+    
+    private final long[] keys;  // the key of each entry, XORed with the entry
+    private final long[] entries;   // the packed score, depth, bound and move of each entry
+    private final int bucketMask;   // the number of buckets minus one; the number of buckets is a power of two
+    
+    /**
+     * Creates an empty table using about the given amount of memory.
+     * 
+     * @param megabytes the size of the table in megabytes.
+     */
+    public TranspositionTable(int megabytes)
+    {
+        long bytes = Math.max(1, megabytes) * 1024L * 1024L;
+        int buckets = Integer.highestOneBit((int) Math.min(bytes / 32, 1 << 30)); // 2 entries of 16 bytes each
+        keys = new long[2 * buckets];
+        entries = new long[2 * buckets];
+        bucketMask = buckets - 1;
+    }
+    
+    /**
+     * Returns a table shared by every agent in this program that was not given its own table,
+     * creating it on first use.
+     * 
+     * @return the shared table.
+     */
+    public static synchronized TranspositionTable getShared()
+    {
+        if (shared == null)
+        {
+            shared = new TranspositionTable(DEFAULT_MEGABYTES);
+        }
+        return shared;
+    }
+    
+    /**
+     * Looks up a position.
+     * 
+     * @param key the key of the position.
+     * @return the packed entry, or NO_ENTRY if the position is not stored.
+     */
+    public long probe(long key)
+    {
+        int index = ((int) key & bucketMask) << 1;
+        for (int i = index; i < index + 2; i++)
+        {
+            long entry = entries[i];   // read once, so the check and the result agree
+            if (entry != NO_ENTRY && (keys[i] ^ entry) == key)
+            {
+                return entry;
+            }
+        }
+        return NO_ENTRY;
+    }
+    
+    /**
+     * Stores the result of searching a position.
+     * 
+     * @param key the key of the position.
+     * @param depth the number of plies that were searched below the position.
+     * @param score the score found.
+     * @param bound EXACT, LOWER_BOUND or UPPER_BOUND.
+     * @param move the best column found, or -1 if none.
+     */
+    public void store(long key, int depth, int score, int bound, int move)
+    {
+        long entry = VALID | ((long) (move + 1) << 42) | ((long) bound << 40)
+            | ((long) Math.min(depth, 255) << 32) | (score & 0xFFFFFFFFL);
+        int index = ((int) key & bucketMask) << 1;
+        long deep = entries[index];
+        if (deep != NO_ENTRY && (keys[index] ^ deep) != key && depth < getDepth(deep))
+        {
+            index++;    // keep the deeper result and use the always-replace entry
+        }
+        keys[index] = key ^ entry;
+        entries[index] = entry;
+    }
+    
+    /**
+     * Removes every entry from the table.
+     */
+    public void clear()
+    {
+        Arrays.fill(keys, 0L);
+        Arrays.fill(entries, NO_ENTRY);
+    }
+    
+    /**
+     * Get the score of a packed entry.
+     * 
+     * @param entry the packed entry.
+     * @return the stored score.
+     */
+    public static int getScore(long entry)
+    {
+        return (int) entry;
+    }
+    
+    /**
+     * Get the search depth of a packed entry.
+     * 
+     * @param entry the packed entry.
+     * @return the number of plies searched below the position.
+     */
+    public static int getDepth(long entry)
+    {
+        return (int) (entry >>> 32) & 0xFF;
+    }
+    
+    /**
+     * Get the bound type of a packed entry.
+     * 
+     * @param entry the packed entry.
+     * @return EXACT, LOWER_BOUND or UPPER_BOUND.
+     */
+    public static int getBound(long entry)
+    {
+        return (int) (entry >>> 40) & 3;
+    }
+    
+    /**
+     * Get the best move of a packed entry.
+     * 
+     * @param entry the packed entry.
+     * @return the best column, or -1 if none was stored.
+     */
+    public static int getMove(long entry)
+    {
+        return ((int) (entry >>> 42) & 0xFFFF) - 1;
+    }
+    
+    /**
+     * Get the number of entries the table can hold.
+     * 
+     * @return the capacity of the table.
+     */
+    public int getCapacity()
+    {
+        return keys.length;
+    }
+}
@@ -0,0 +1,300 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The table of every line of slots that wins the game when it is filled with one color.
+ * 
+ * A line is winLength slots in a row: vertical, horizontal or along either diagonal. The
+ * table lists the slots of every line and, for every slot, the lines passing through it, so
+ * questions such as "would a token here complete a line?" become a walk over a few short
+ * arrays instead of a search of the board. The standard 7x6 board has 69 lines, and no slot
+ * lies on more than 13 of them.
+ * 
+ * A table only depends on the board size and win length, so one table is built per board, the
+ * first time it is asked for, and shared by everything playing on it. Its size grows with the
+ * number of slots times the win length, so there is no table for boards where it would hold
+ * more than MAX_ENTRIES slot entries; code using the tables scans the board there instead.
+ * 
+ * Slots are numbered column * rows + row, with row 0 at the top as in Connect4Column.
+ * 
+ * Your agent may use this class.
+ */
+public class WinLines
+{
+    public static final int MAX_ENTRIES = 1 << 22;  // the most slots all the lines of a table may hold together, 16 MB of ints
+    
+    private static final int[][] DIRECTIONS = { { 0, 1 }, { 1, 0 }, { 1, 1 }, { 1, -1 } };  // column and row steps of the four line directions
+    private static final Map<String, WinLines> tables = new HashMap<>();   // the tables built by get(...), by board
+    
+    private final int columns, rows, winLength; // the board the lines belong to
+    private final int lineCount;    // the number of lines
+    private final int[] lineSlots;  // per line: its winLength slots, one after another
+    private final int[] slotLineStart;  // per slot: where its lines start in slotLines; one extra entry marks the end
+    private final int[] slotLines;  // the lines through every slot, grouped by slot
+    
+    /**
+     * Builds the table of a board.
+     * 
+     * @param columns the number of columns of the board.
+     * @param rows the number of rows of the board.
+     * @param winLength the number of tokens in a row needed to win.
+     * @throws IllegalArgumentException if the board is too large for a table.
+     */
+    public WinLines(int columns, int rows, int winLength)
+    {
+        if (!isSupported(columns, rows, winLength))
+        {
+            throw new IllegalArgumentException("a " + columns + "x" + rows + " board is too large for a win-line table");
+        }
+        this.columns = columns;
+        this.rows = rows;
+        this.winLength = winLength;
+        int count = 0;
+        for (int[] direction : DIRECTIONS)
+        {
+            count += countStarts(direction[0], direction[1]);
+        }
+        lineCount = count;
+        lineSlots = new int[lineCount * winLength];
+        int[] linesPerSlot = new int[columns * rows];
+        int line = 0;
+        for (int[] direction : DIRECTIONS)
+        {
+            for (int column = 0; column < columns; column++)
+            {
+                for (int row = 0; row < rows; row++)
+                {
+                    if (!fits(column, row, direction[0], direction[1]))
+                    {
+                        continue;
+                    }
+                    for (int i = 0; i < winLength; i++)
+                    {
+                        int slot = (column + i * direction[0]) * rows + row + i * direction[1];
+                        lineSlots[line * winLength + i] = slot;
+                        linesPerSlot[slot]++;
+                    }
+                    line++;
+                }
+            }
+        }
+        slotLineStart = new int[columns * rows + 1];
+        for (int slot = 0; slot < columns * rows; slot++)
+        {
+            slotLineStart[slot + 1] = slotLineStart[slot] + linesPerSlot[slot];
+        }
+        slotLines = new int[slotLineStart[columns * rows]];
+        int[] filled = slotLineStart.clone();
+        for (line = 0; line < lineCount; line++)
+        {
+            for (int i = 0; i < winLength; i++)
+            {
+                int slot = lineSlots[line * winLength + i];
+                slotLines[filled[slot]++] = line;
+            }
+        }
+    }
+    
+    /**
+     * Returns the table of a game's board, building it on first use.
+     * 
+     * @param game a game on the board whose table is wanted.
+     * @return the shared table, or null if the board is too large for one.
+     */
+    public static WinLines get(Connect4Game game)
+    {
+        return get(game.getColumnCount(), game.getRowCount(), game.getWinLength());
+    }
+    
+    /**
+     * Returns the table of a board, building it on first use.
+     * 
+     * @param columns the number of columns of the board.
+     * @param rows the number of rows of the board.
+     * @param winLength the number of tokens in a row needed to win.
+     * @return the shared table, or null if the board is too large for one.
+     */
+    public static synchronized WinLines get(int columns, int rows, int winLength)
+    {
+        if (!isSupported(columns, rows, winLength))
+        {
+            return null;
+        }
+        String name = columns + "x" + rows + "-" + winLength;
+        WinLines table = tables.get(name);
+        if (table == null)
+        {
+            table = new WinLines(columns, rows, winLength);
+            tables.put(name, table);
+        }
+        return table;
+    }
+    
+    /**
+     * Checks whether a board is small enough to have a table. At most one line starts at each
+     * slot in each of the four directions, so a table holds at most 4 * columns * rows *
+     * winLength slot entries; keeping that within MAX_ENTRIES also keeps every slot number
+     * within an int.
+     * 
+     * @param columns the number of columns of the board.
+     * @param rows the number of rows of the board.
+     * @param winLength the number of tokens in a row needed to win.
+     * @return true if the board can have a table, false if it is too large.
+     */
+    public static boolean isSupported(int columns, int rows, int winLength)
+    {
+        return 4L * columns * rows * Math.max(1, winLength) <= MAX_ENTRIES;
+    }
+    
+    /**
+     * Get the number of lines on the board.
+     * 
+     * @return the line count; 69 for the standard 7x6 board.
+     */
+    public int getLineCount()
+    {
+        return lineCount;
+    }
+    
+    /**
+     * Get the number of slots in every line.
+     * 
+     * @return the win length.
+     */
+    public int getWinLength()
+    {
+        return winLength;
+    }
+    
+    /**
+     * Get one slot of a line.
+     * 
+     * @param line the line, from 0 to getLineCount() - 1.
+     * @param i the position of the slot within the line, from 0 to getWinLength() - 1.
+     * @return the slot, as column * rows + row.
+     */
+    public int getSlot(int line, int i)
+    {
+        return lineSlots[line * winLength + i];
+    }
+    
+    /**
+     * Get the number of lines passing through a slot.
+     * 
+     * @param column the column of the slot.
+     * @param row the row of the slot.
+     * @return the number of lines through it.
+     */
+    public int getLineCount(int column, int row)
+    {
+        int slot = column * rows + row;
+        return slotLineStart[slot + 1] - slotLineStart[slot];
+    }
+    
+    /**
+     * Get one of the lines passing through a slot.
+     * 
+     * @param column the column of the slot.
+     * @param row the row of the slot.
+     * @param i which of the lines, from 0 to getLineCount(column, row) - 1.
+     * @return the line.
+     */
+    public int getLine(int column, int row, int i)
+    {
+        return slotLines[slotLineStart[column * rows + row] + i];
+    }
+    
+    /**
+     * Counts the tokens of every line.
+     * 
+     * @param game the position to count.
+     * @param redCounts filled with the number of red tokens in each line; it needs one entry per line.
+     * @param yellowCounts filled with the number of yellow tokens in each line.
+     */
+    public void countTokens(Connect4Game game, int[] redCounts, int[] yellowCounts)
+    {
+        for (int line = 0; line < lineCount; line++)
+        {
+            int red = 0, yellow = 0;
+            for (int i = line * winLength; i < (line + 1) * winLength; i++)
+            {
+                int column = lineSlots[i] / rows, row = lineSlots[i] % rows;
+                if (game.isFilled(column, row))
+                {
+                    if (game.isRed(column, row))
+                    {
+                        red++;
+                    }
+                    else
+                    {
+                        yellow++;
+                    }
+                }
+            }
+            redCounts[line] = red;
+            yellowCounts[line] = yellow;
+        }
+    }
+    
+    /**
+     * Checks whether a token in a slot would complete a line of its color, whether or not the
+     * slot can be played yet.
+     * 
+     * @param game the position to check.
+     * @param column the column of the slot.
+     * @param row the row of the slot; the slot itself is not looked at.
+     * @param red true to check for a red line, false for a yellow one.
+     * @return true if every other slot of some line through the slot holds a token of the color.
+     */
+    public boolean completesLine(Connect4Game game, int column, int row, boolean red)
+    {
+        int slot = column * rows + row;
+        for (int i = slotLineStart[slot]; i < slotLineStart[slot + 1]; i++)
+        {
+            int start = slotLines[i] * winLength;
+            int matched = 0;
+            for (int j = start; j < start + winLength; j++)
+            {
+                int other = lineSlots[j];
+                if (other != slot && game.isFilled(other / rows, other % rows) && game.isRed(other / rows, other % rows) == red)
+                {
+                    matched++;
+                }
+            }
+            if (matched == winLength - 1)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Counts the lines running in a direction that fit on the board.
+     */
+    private int countStarts(int columnStep, int rowStep)
+    {
+        int count = 0;
+        for (int column = 0; column < columns; column++)
+        {
+            for (int row = 0; row < rows; row++)
+            {
+                if (fits(column, row, columnStep, rowStep))
+                {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Checks whether a line starting at a slot and running in a direction stays on the board.
+     */
+    private boolean fits(int column, int row, int columnStep, int rowStep)
+    {
+        int lastColumn = column + (winLength - 1) * columnStep;
+        int lastRow = row + (winLength - 1) * rowStep;
+        return lastColumn < columns && lastRow >= 0 && lastRow < rows;
+    }
+}